@@ -0,0 +1,132 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.azib.ipscan.core.ScanningResult;
+import net.azib.ipscan.core.ScanningResult.ResultType;
+import net.azib.ipscan.core.ScanningResultList;
+import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.core.values.IntegerWithUnit;
+import net.azib.ipscan.core.values.NotAvailable;
+import net.azib.ipscan.core.values.NumericRangeList;
+import net.azib.ipscan.fetchers.Fetcher;
+import net.azib.ipscan.fetchers.FetcherRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.savarese.vserv.tcpip.OctetConverter;
+
+/**
+ * Reading of all the scanning results for the console, a quarter of the hosts being alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IPScannerContextBenchmark {
+
+	private static final EnumSet<IPScannerService.Fetcher> FETCHERS = EnumSet.of(IPScannerService.Fetcher.Ping,
+		IPScannerService.Fetcher.Hostname, IPScannerService.Fetcher.Ports, IPScannerService.Fetcher.MAC, IPScannerService.Fetcher.MACVendor);
+
+	@Param({"10000", "100000", "1000000"})
+	int results;
+
+	private IPScannerService.IPScannerContext context;
+	private int knownGeneration = -1;
+
+	@Setup
+	public void setUp() throws UnknownHostException {
+		List<Fetcher> fetchers = new ArrayList<>();
+		for (IPScannerService.Fetcher id : FETCHERS) fetchers.add(new ValueFetcher(id));
+		FetcherRegistry fetcherRegistry = new FetcherRegistry(fetchers);
+		fetcherRegistry.setFetchers(FETCHERS);
+
+		context = new IPScannerService.IPScannerContext(fetcherRegistry);
+		ScanningResultList list = context.scanningResults;
+		list.initNewScan();
+		byte[] octets = new byte[4];
+		for (int i = 0; i < results; i++) {
+			OctetConverter.intToOctets(0x0A000000 + i, octets);
+			ScanningResult result = list.createResult(InetAddress.getByAddress(octets));
+			boolean alive = i % 4 == 0;
+			int fetcherIndex = 0;
+			for (IPScannerService.Fetcher id : FETCHERS) {
+				result.setValue(fetcherIndex++, alive ? aliveValue(id, i) : NotAvailable.VALUE);
+			}
+			result.setType(alive ? (i % 8 == 0 ? ResultType.WITH_PORTS : ResultType.ALIVE) : ResultType.DEAD);
+			list.register(result);
+		}
+	}
+
+	private static Object aliveValue(IPScannerService.Fetcher id, int i) {
+		switch (id) {
+			case Ping: return new IntegerWithUnit(i % 200, "ms");
+			case Hostname: return "host-" + i + ".local";
+			case Ports: return i % 8 == 0 ? new NumericRangeList(new int[] {22, 80, 443, 8080, 8081}, true) : NotAvailable.VALUE;
+			case MAC: return String.format("00:50:56:%02X:%02X:%02X", (i >> 16) & 0xFF, (i >> 8) & 0xFF, i & 0xFF);
+			default: return "VMware";
+		}
+	}
+
+	@Benchmark
+	public List<IPScannerService.ResultValue> getScanningResults() {
+		return context.getScanningResults();
+	}
+
+	/**
+	 * Nothing changes between the calls, so only the cost of checking for changes is measured after the first call
+	 */
+	@Benchmark
+	public int consumeChangedResults(Blackhole blackhole) {
+		knownGeneration = context.consumeChangedResults(knownGeneration, new IPScannerService.ResultChangeConsumer() {
+			@Override
+			public void reset() {
+			}
+
+			@Override
+			public void changed(int row, IPScannerService.ResultValue value) {
+				blackhole.consume(value);
+			}
+		});
+		return knownGeneration;
+	}
+
+	private static class ValueFetcher implements Fetcher {
+		private final IPScannerService.Fetcher id;
+
+		ValueFetcher(IPScannerService.Fetcher id) {
+			this.id = id;
+		}
+
+		@Override
+		public @NotNull IPScannerService.Fetcher getFetcherID() {
+			return id;
+		}
+
+		@Override
+		public Object scan(ScanningSubject subject) {
+			return null;
+		}
+	}
+}
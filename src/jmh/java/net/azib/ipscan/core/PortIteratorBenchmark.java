@@ -0,0 +1,67 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Iteration over all the ports of large port strings and copying of the iterator, which is done for every address.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortIteratorBenchmark {
+
+	@Param({"all", "ranges", "singles"})
+	String ports;
+
+	private PortIterator iterator;
+
+	@Setup
+	public void setUp() {
+		StringBuilder portString = new StringBuilder();
+		switch (ports) {
+			case "all":
+				portString.append("1-65535");
+				break;
+			case "ranges":
+				// 1000 ranges of 10 ports
+				for (int port = 1; port < 65000; port += 65) portString.append(port).append('-').append(port + 9).append(',');
+				break;
+			default:
+				// 5000 single ports
+				for (int i = 1; i <= 5000; i++) portString.append(i * 13).append(',');
+		}
+		iterator = new PortIterator(portString.toString());
+	}
+
+	@Benchmark
+	public void iterate(Blackhole blackhole) {
+		PortIterator ports = iterator.copy();
+		while (ports.hasNext()) blackhole.consume(ports.next());
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public PortIterator copy() {
+		return iterator.copy();
+	}
+}
@@ -0,0 +1,58 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.values;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of open port lists, as done for every displayed result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumericRangeListBenchmark {
+
+	@Param({"3", "100", "10000"})
+	int size;
+
+	@Param({"false", "true"})
+	boolean displayAsRanges;
+
+	private NumericRangeList list;
+
+	@Setup
+	public void setUp() {
+		// sorted ports with a mix of consecutive numbers and gaps
+		Random random = new Random(42);
+		int[] numbers = new int[size];
+		int port = 20;
+		for (int i = 0; i < size; i++) {
+			port += random.nextInt(4) == 0 ? 2 + random.nextInt(5) : 1;
+			numbers[i] = port;
+		}
+		list = new NumericRangeList(numbers, displayAsRanges);
+	}
+
+	@Benchmark
+	public String render() {
+		return list.toString();
+	}
+}
@@ -0,0 +1,58 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import java.util.concurrent.TimeUnit;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Iteration of addresses of a /8 network, the feeder is recreated when it runs out of addresses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeederBenchmark {
+
+	@Param({"range", "cidr", "cidr-random"})
+	String feederType;
+
+	private ScannerConfig config;
+	private Feeder feeder;
+
+	@Setup
+	public void setUp() {
+		config = new ScannerConfig();
+		config.randomizeOrder = feederType.endsWith("-random");
+		feeder = createFeeder();
+	}
+
+	private Feeder createFeeder() {
+		if (feederType.equals("range"))
+			return new RangeFeeder("10.0.0.0", "10.255.255.255", config);
+		return new CIDRFeeder("10.0.0.0/8", config);
+	}
+
+	@Benchmark
+	public ScanningSubject next() {
+		if (!feeder.hasNext()) feeder = createFeeder();
+		return feeder.next();
+	}
+}
@@ -0,0 +1,61 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.fetchers;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup of vendors of random MAC addresses, most of them unknown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MACVendorFetcherBenchmark {
+
+	private static final int MAC_COUNT = 1024;
+
+	private MACVendorFetcher fetcher;
+	private final String[] macs = new String[MAC_COUNT];
+	private int index;
+
+	@Setup
+	public void setUp() {
+		fetcher = new MACVendorFetcher(null);
+		fetcher.init();
+		Random random = new Random(42);
+		for (int i = 0; i < MAC_COUNT; i++) {
+			StringBuilder mac = new StringBuilder();
+			for (int octet = 0; octet < 6; octet++) {
+				if (octet > 0) mac.append(':');
+				mac.append(String.format("%02X", random.nextInt(256)));
+			}
+			macs[i] = mac.toString();
+		}
+		// well-known prefixes
+		macs[0] = "00:00:0C:12:34:56";
+		macs[1] = "00:50:56:AB:CD:EF";
+		macs[2] = "B8:27:EB:00:11:22";
+	}
+
+	@Benchmark
+	public String findMACVendor() {
+		return fetcher.findMACVendor(macs[index++ & (MAC_COUNT - 1)]);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.vserv.tcpip;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of echo requests and decoding of echo replies, the same way as ICMPSharedPinger does per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ICMPEchoPacketBenchmark {
+
+	private static final int TIME_OFFSET_IN_PACKET = 20 + 8;
+
+	private final byte[] requestData = new byte[84];
+	private final byte[] replyData = new byte[84];
+	private ICMPEchoPacket request;
+	private ICMPEchoPacket reply;
+	private int sequence;
+
+	@Setup
+	public void setUp() {
+		request = createPacket(requestData);
+		request.setType(ICMPPacket.TYPE_ECHO_REQUEST);
+		request.setIdentifier(0x1234);
+
+		reply = createPacket(replyData);
+		reply.setType(ICMPPacket.TYPE_ECHO_REPLY);
+		reply.setIdentifier(0x1234);
+		reply.setSequenceNumber(1);
+		replyData[IPPacket.OFFSET_SOURCE_ADDRESS] = (byte) 192;
+		replyData[IPPacket.OFFSET_SOURCE_ADDRESS + 1] = (byte) 168;
+		replyData[IPPacket.OFFSET_SOURCE_ADDRESS + 3] = 1;
+		OctetConverter.longToOctets(System.currentTimeMillis(), replyData, TIME_OFFSET_IN_PACKET);
+		reply.computeICMPChecksum();
+	}
+
+	private static ICMPEchoPacket createPacket(byte[] data) {
+		ICMPEchoPacket packet = new ICMPEchoPacket(1);
+		packet.setData(data);
+		packet.setIPHeaderLength(5);
+		packet.setICMPDataByteLength(56);
+		packet.setCode(0);
+		return packet;
+	}
+
+	@Benchmark
+	public int encodeRequest() {
+		request.setSequenceNumber(++sequence & 0xFFFF);
+		OctetConverter.longToOctets(System.currentTimeMillis(), requestData, TIME_OFFSET_IN_PACKET);
+		return request.computeICMPChecksum();
+	}
+
+	@Benchmark
+	public long decodeReply() {
+		if (reply.getType() != ICMPPacket.TYPE_ECHO_REPLY || reply.getIdentifier() != 0x1234 || reply.getSequenceNumber() <= 0)
+			return -1;
+		return reply.getSourceAsWord() + OctetConverter.octetsToLong(replyData, TIME_OFFSET_IN_PACKET) + (reply.getTTL() & 0xFF);
+	}
+}
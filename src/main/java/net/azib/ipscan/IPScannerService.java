@@ -4,8 +4,10 @@ import static java.util.Arrays.asList;
 import static net.azib.ipscan.core.state.ScanningState.IDLE;
 import static org.homio.addon.ipscanner.IPScanResultConsolePlugin.PLUGIN_NAME;
 
+import java.io.File;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
@@ -19,9 +21,14 @@ import net.azib.ipscan.core.ScanningResult;
 import net.azib.ipscan.core.ScanningResultCallback;
 import net.azib.ipscan.core.ScanningResultList;
 import net.azib.ipscan.core.net.PingerRegistry;
+import net.azib.ipscan.core.net.PortScannerRegistry;
 import net.azib.ipscan.core.state.ScanningState;
 import net.azib.ipscan.core.state.StateMachine;
 import net.azib.ipscan.core.state.StateTransitionListener;
+import net.azib.ipscan.feeders.CIDRFeeder;
+import net.azib.ipscan.feeders.Feeder;
+import net.azib.ipscan.feeders.FileFeeder;
+import net.azib.ipscan.feeders.MultiRangeFeeder;
 import net.azib.ipscan.feeders.RangeFeeder;
 import net.azib.ipscan.fetchers.FetcherRegistry;
 import net.azib.ipscan.fetchers.HTTPProxyFetcher;
@@ -37,7 +44,9 @@ import net.azib.ipscan.fetchers.PortsFetcher;
 import net.azib.ipscan.fetchers.UnixMACFetcher;
 import net.azib.ipscan.fetchers.WebDetectFetcher;
 import net.azib.ipscan.fetchers.WinMACFetcher;
+import net.azib.ipscan.util.PacketRateLimiter;
 import org.apache.commons.lang3.SystemUtils;
+import org.homio.addon.ipscanner.IPScanResultConsolePlugin;
 import org.homio.api.Context;
 import org.homio.hquery.ProgressBar;
 import org.jetbrains.annotations.Nullable;
@@ -50,6 +59,7 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 	}
 
 	private final PingerRegistry pingerRegistry;
+	private final PortScannerRegistry portScannerRegistry;
 	private final Scanner scanner;
 	@Getter private final StateMachine stateMachine;
 	@Getter private final ScannerConfig scannerConfig;
@@ -58,7 +68,7 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 	@Getter private final FetcherRegistry fetcherRegistry;
 
 	private ScannerDispatcherThread scannerThread;
-	private RangeFeeder feeder;
+	private Feeder feeder;
 	private Runnable completeHandler = () -> {
 	};
 	private final Consumer<StateMachine.Transition> startHandler = transition -> {
@@ -69,29 +79,30 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 		this.context = context;
 		this.scannerConfig = new ScannerConfig();
 		this.pingerRegistry = new PingerRegistry(scannerConfig);
+		this.portScannerRegistry = new PortScannerRegistry(scannerConfig);
 
 		this.stateMachine = new StateMachine() {
 		};
 		this.stateMachine.addTransitionListener(this);
 
 		this.fetcherRegistry = buildFetcherRegistry();
-		this.scanner = new Scanner(fetcherRegistry);
+		this.scanner = new Scanner(fetcherRegistry, scannerConfig);
 		this.ipScannerContext = new IPScannerContext(fetcherRegistry);
 		this.stateMachine.init();
 	}
 
 	private FetcherRegistry buildFetcherRegistry() {
-		MACFetcher macFetcher = SystemUtils.IS_OS_WINDOWS ? new WinMACFetcher() : new UnixMACFetcher();
+		MACFetcher macFetcher = SystemUtils.IS_OS_WINDOWS ? new WinMACFetcher() : new UnixMACFetcher(scannerConfig);
 		return new FetcherRegistry(asList(
 			new PingFetcher(pingerRegistry, scannerConfig),
 			new PingTTLFetcher(pingerRegistry, scannerConfig),
-			new HostnameFetcher(),
+			new HostnameFetcher(scannerConfig),
 			new WebDetectFetcher(scannerConfig),
 			new HTTPProxyFetcher(scannerConfig),
 			new HTTPSenderFetcher(scannerConfig),
 			new PacketLossFetcher(pingerRegistry, scannerConfig),
-			new NetBIOSInfoFetcher(),
-			new PortsFetcher(scannerConfig),
+			new NetBIOSInfoFetcher(scannerConfig),
+			new PortsFetcher(portScannerRegistry, scannerConfig),
 			new MACVendorFetcher(macFetcher),
 			macFetcher));
 	}
@@ -99,9 +110,19 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 	@Override
 	public void updateProgress(@Nullable String msg, int runningThreads, double percentageComplete) {
 		msg = msg == null ? "IPScanner: active tasks: [%s]".formatted(runningThreads) : msg;
+		msg += " (%s)".formatted(formatPacketRate());
 		scannerConfig.progressBar.progress(percentageComplete, msg);
-		context.ui().console().refreshPluginContent(PLUGIN_NAME,
-			context.ui().console().getRegisteredPlugin(PLUGIN_NAME).getValue());
+		IPScanResultConsolePlugin plugin = (IPScanResultConsolePlugin) context.ui().console().getRegisteredPlugin(PLUGIN_NAME);
+		// only push the table if some results have changed since the last time
+		if (plugin != null && plugin.takeChangesToPush())
+			context.ui().console().refreshPluginContent(PLUGIN_NAME, plugin.getValue());
+	}
+
+	private String formatPacketRate() {
+		PacketRateLimiter limiter = scannerConfig.packetRateLimiter;
+		long sendingRate = Math.round(limiter.getSendingRate());
+		long limit = Math.round(limiter.getRate());
+		return limit > 0 ? "%d/%d pkt/s".formatted(sendingRate, limit) : "%d pkt/s".formatted(sendingRate);
 	}
 
 	@Override
@@ -111,7 +132,7 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 			this.ipScannerContext.scanningResults.update(result);
 		}
 		else {
-			this.ipScannerContext.scanningResults.registerAtIndex(0, result);
+			this.ipScannerContext.scanningResults.register(result);
 		}
 	}
 
@@ -120,15 +141,39 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 		this.prepareForResults(result);
 	}
 
-	private ScannerDispatcherThread createScannerThread(RangeFeeder feeder, ScanningProgressCallback progressCallback, ScanningResultCallback resultsCallback) {
+	private ScannerDispatcherThread createScannerThread(Feeder feeder, ScanningProgressCallback progressCallback, ScanningResultCallback resultsCallback) {
 		return new ScannerDispatcherThread(feeder, scanner, stateMachine, progressCallback, this.ipScannerContext.scanningResults, scannerConfig, resultsCallback);
 	}
 
+	/**
+	 * Starts scanning of a range. If endIP is empty, startIP may also contain
+	 * a CIDR block (192.168.0.0/24) or several comma-separated ranges.
+	 */
 	public void startScan(String startIP, String endIP, String ports, ProgressBar progressBar) {
+		startScan(createFeeder(startIP, endIP), ports, progressBar);
+	}
+
+	/**
+	 * Starts scanning of the addresses listed in a text file, see {@link FileFeeder}
+	 */
+	public void startScan(File addressFile, String ports, ProgressBar progressBar) {
+		startScan(new FileFeeder(addressFile, scannerConfig), ports, progressBar);
+	}
+
+	private Feeder createFeeder(String startIP, String endIP) {
+		if (endIP == null || endIP.isBlank()) {
+			if (startIP.indexOf('/') >= 0 && startIP.indexOf(',') < 0)
+				return new CIDRFeeder(startIP, scannerConfig);
+			return new MultiRangeFeeder(startIP, scannerConfig);
+		}
+		return new RangeFeeder(startIP, endIP, scannerConfig);
+	}
+
+	public void startScan(Feeder feeder, String ports, ProgressBar progressBar) {
 		scannerConfig.portString = ports;
 		scannerConfig.progressBar = progressBar;
 		scannerConfig.context = context;
-		feeder = new RangeFeeder(startIP, endIP, scannerConfig);
+		this.feeder = feeder;
 		if (stateMachine.inState(IDLE)) {
 			if (!this.pingerRegistry.checkSelectedPinger())
 				throw new IllegalStateException("Unable to start ip scanner");
@@ -187,13 +232,51 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 
 		public List<ResultValue> getScanningResults() {
 			if (scanningResults.getFetchers() != null) {
-
-				List<ScanningResult> snap = new ArrayList<>(scanningResults.getResultList());
 				List<Integer> indexes = Stream.of(Fetcher.values()).map(scanningResults::getFetcherIndex).toList();
-				return snap.stream().map(s -> new ResultValue(s, indexes)).toList();
+				// read the values right from the list, without creating of ScanningResults
+				synchronized (scanningResults) {
+					int size = scanningResults.size();
+					List<ResultValue> values = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						values.add(new ResultValue(scanningResults, i, indexes));
+					}
+					return values;
+				}
 			}
 			return Collections.emptyList();
 		}
+
+		/**
+		 * Passes only the results changed since the previous call to the consumer.
+		 * All the results are passed after {@link ResultChangeConsumer#reset()} if the list has been cleared since then.
+		 * @param knownGeneration the value returned by the previous call
+		 * @return the generation of the results to pass to the next call
+		 */
+		public int consumeChangedResults(int knownGeneration, ResultChangeConsumer consumer) {
+			List<Integer> indexes = Stream.of(Fetcher.values()).map(scanningResults::getFetcherIndex).toList();
+			synchronized (scanningResults) {
+				BitSet rows = scanningResults.takeChangedRows();
+				int generation = scanningResults.getGeneration();
+				if (generation != knownGeneration) {
+					consumer.reset();
+					rows.set(0, scanningResults.size());
+				}
+				for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+					consumer.changed(row, new ResultValue(scanningResults, scanningResults.indexOfRow(row), indexes));
+				}
+				return generation;
+			}
+		}
+	}
+
+	public interface ResultChangeConsumer {
+		/** All the previously passed results are no longer valid */
+		void reset();
+
+		/**
+		 * @param row position of the result in order of scanning, it doesn't change during the scan
+		 */
+		void changed(int row, ResultValue value);
 	}
 
 	public static class ResultValue {
@@ -208,22 +291,22 @@ public class IPScannerService implements ScanningProgressCallback, ScanningResul
 		public final String macFetcherValue;
 		public final ScanningResult.ResultType type;
 
-		public ResultValue(ScanningResult scanningResult, List<Integer> indexes) {
-			this.address = scanningResult.getAddress().getHostAddress();
-			this.type = scanningResult.getType();
-			this.ping = nullSafeValue(scanningResult, indexes.get(Fetcher.Ping.ordinal()));
-			this.hostname = nullSafeValue(scanningResult, indexes.get(Fetcher.Hostname.ordinal()));
-			this.webDetectValue = nullSafeValue(scanningResult, indexes.get(Fetcher.WebDetect.ordinal()));
-			this.httpSenderValue = nullSafeValue(scanningResult, indexes.get(Fetcher.HTTPSender.ordinal()));
-			this.netBIOSInfo = nullSafeValue(scanningResult, indexes.get(Fetcher.NetBIOSInfo.ordinal()));
-			this.ports = nullSafeValue(scanningResult, indexes.get(Fetcher.Ports.ordinal()));
-			this.macVendorValue = nullSafeValue(scanningResult, indexes.get(Fetcher.MACVendor.ordinal()));
-			this.macFetcherValue = nullSafeValue(scanningResult, indexes.get(Fetcher.MAC.ordinal()));
+		public ResultValue(ScanningResultList scanningResults, int index, List<Integer> indexes) {
+			this.address = scanningResults.getAddress(index).getHostAddress();
+			this.type = scanningResults.getType(index);
+			this.ping = nullSafeValue(scanningResults, index, indexes.get(Fetcher.Ping.ordinal()));
+			this.hostname = nullSafeValue(scanningResults, index, indexes.get(Fetcher.Hostname.ordinal()));
+			this.webDetectValue = nullSafeValue(scanningResults, index, indexes.get(Fetcher.WebDetect.ordinal()));
+			this.httpSenderValue = nullSafeValue(scanningResults, index, indexes.get(Fetcher.HTTPSender.ordinal()));
+			this.netBIOSInfo = nullSafeValue(scanningResults, index, indexes.get(Fetcher.NetBIOSInfo.ordinal()));
+			this.ports = nullSafeValue(scanningResults, index, indexes.get(Fetcher.Ports.ordinal()));
+			this.macVendorValue = nullSafeValue(scanningResults, index, indexes.get(Fetcher.MACVendor.ordinal()));
+			this.macFetcherValue = nullSafeValue(scanningResults, index, indexes.get(Fetcher.MAC.ordinal()));
 		}
 
-		private String nullSafeValue(ScanningResult scanningResult, int index) {
-			if (index >= 0) {
-				Object ret = scanningResult.getValues().get(index);
+		private String nullSafeValue(ScanningResultList scanningResults, int index, int fetcherIndex) {
+			if (fetcherIndex >= 0) {
+				Object ret = scanningResults.getValue(index, fetcherIndex);
 				return ret == null ? null : ret.toString();
 			}
 			return null;
@@ -5,6 +5,8 @@
  */
 package net.azib.ipscan;
 
+import net.azib.ipscan.fetchers.SharedNetBIOSResolver;
+import net.azib.ipscan.util.PacketRateLimiter;
 import org.apache.commons.lang3.SystemUtils;
 import org.homio.api.Context;
 import org.homio.hquery.ProgressBar;
@@ -18,16 +20,55 @@ public class ScannerConfig {
 
 	public String portString = "80,443,8080";
 	public int maxThreads = 30;
-	public int threadDelay = 20;
+	/** Run each scanned address on a virtual thread instead of a fixed pool of maxThreads platform threads */
+	public boolean useVirtualThreads = false;
+	/** Max number of addresses scanned concurrently when useVirtualThreads is enabled */
+	public int maxVirtualThreads = 1000;
+	/** Max number of addresses that start to be scanned per second, 0 means unlimited */
+	public int maxHostsPerSecond = 0;
+	/** Ping all the addresses first, then run the other fetchers only on the live hosts (or all of them, if scanDeadHosts) */
+	public boolean twoPhaseScan = false;
+	/** Max number of addresses pinged concurrently during the first phase of twoPhaseScan */
+	public int maxSweepPings = 1000;
+	/** Run independent fetchers of an address concurrently instead of one by one */
+	public boolean parallelFetchers = false;
 	public boolean scanDeadHosts = false;
 	public String selectedPinger = SystemUtils.IS_OS_WINDOWS ? "pinger.windows" : "pinger.icmp";
+	/** Time to wait for ping replies, in ms (pinger.icmp waits this long after the last echo request to a host is sent) */
 	public int pingTimeout = 2000;
 	public int pingCount = 3;
+	/** Max number of ICMP echo requests sent per second among all hosts (pinger.icmp only), 0 means unlimited */
+	public int pingPacketsPerSecond = 0;
+	/** Receive buffer size of the raw ICMP socket, in bytes (pinger.icmp only), 0 means the system default */
+	public int pingReceiveBufferSize = 2 << 20;
+	/** Max number of probe packets sent per second by all pingers, port scanners and resolvers, 0 means unlimited */
+	public int maxPacketsPerSecond = 0;
+	/** Lower the packet rate when alive hosts start losing replies or their round trip times grow, and raise it back otherwise */
+	public boolean adaptPacketRate = false;
 	public boolean skipBroadcastAddresses = true;
+	/** Scan addresses in a pseudo-random order, spreading the load over subnets (IPv4 only) */
+	public boolean randomizeOrder = false;
+	/** Timeout of a reverse DNS query to a single nameserver, in ms */
+	public int dnsTimeout = 1000;
+	/** Number of times a reverse DNS query is repeated with the next nameserver */
+	public int dnsRetries = 2;
 	public int portTimeout = 2000;
+	public String selectedPortScanner = "portscanner.connect";
+	/** Max number of simultaneous port probes to a single host (portscanner.nio and portscanner.syn only) */
+	public int maxPortConnectsPerHost = 64;
+	/** Max number of simultaneous port connects among all hosts (portscanner.nio only) */
+	public int maxPortConnects = 1024;
 	public boolean adaptPortTimeout = true;
 	public int minPortTimeout = 100;
 	public boolean useRequestedPorts = true;
+	/** Min interval between reloads of the ARP table of the OS, in ms (MAC fetcher on Linux, Mac and other Unixes) */
+	public int neighborTableRefreshInterval = 500;
+	/** Shared by all the probes of a scan, reset when the scan starts */
+	public final PacketRateLimiter packetRateLimiter = new PacketRateLimiter();
+	/** Shared by the hostname and NetBIOS info fetchers, opened when a scan using them starts */
+	public final SharedNetBIOSResolver netBIOSResolver = new SharedNetBIOSResolver();
+	/** Set when the scan starts: pinging stops at the first reply if no selected fetcher needs all the replies */
+	public boolean pingUntilAlive;
 	public ProgressBar progressBar;
 	public Context context;
 }
@@ -0,0 +1,230 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core;
+
+import java.util.Arrays;
+import net.azib.ipscan.IPScannerService;
+import net.azib.ipscan.core.values.IntegerWithUnit;
+import net.azib.ipscan.core.values.NotAvailable;
+import net.azib.ipscan.core.values.NotScanned;
+import net.azib.ipscan.core.values.NumericRangeList;
+import net.azib.ipscan.util.IntObjectMap;
+
+/**
+ * Storage of values of a single fetcher in {@link ScanningResultList}, one value per row.
+ * Typed columns keep values in primitive arrays, values of unexpected types are kept aside.
+ */
+abstract class ResultColumn {
+
+	/**
+	 * @return the column suitable for values of the specified fetcher
+	 */
+	static ResultColumn forFetcher(IPScannerService.Fetcher fetcherID, int capacity) {
+		switch (fetcherID) {
+			case Ping:
+			case PingTTL:
+				return new IntColumn(capacity);
+			case Ports:
+				return new PortsColumn(capacity);
+			default:
+				return new ObjectColumn(capacity);
+		}
+	}
+
+	abstract Object get(int row);
+
+	abstract void set(int row, Object value);
+
+	abstract void ensureCapacity(int capacity);
+
+	abstract void clear();
+
+	static int grow(int length, int capacity) {
+		return Math.max(length * 2, capacity);
+	}
+
+	/**
+	 * Base for columns that encode common values as primitives
+	 */
+	private static abstract class PrimitiveColumn extends ResultColumn {
+		static final int NULL = Integer.MIN_VALUE;
+		static final int NOT_SCANNED = Integer.MIN_VALUE + 1;
+		static final int NOT_AVAILABLE = Integer.MIN_VALUE + 2;
+		static final int OTHER = Integer.MIN_VALUE + 3;
+
+		/** rows with values that can't be encoded */
+		private final IntObjectMap<Object> others = new IntObjectMap<>();
+
+		/**
+		 * @return the code of a special value or {@link #OTHER} if the value is kept aside
+		 */
+		int encodeSpecial(int row, Object value) {
+			others.remove(row);
+			if (value == null) return NULL;
+			if (value == NotScanned.VALUE) return NOT_SCANNED;
+			if (value == NotAvailable.VALUE) return NOT_AVAILABLE;
+			others.put(row, value);
+			return OTHER;
+		}
+
+		Object decodeSpecial(int row, int code) {
+			switch (code) {
+				case NOT_SCANNED: return NotScanned.VALUE;
+				case NOT_AVAILABLE: return NotAvailable.VALUE;
+				case OTHER: return others.get(row);
+				default: return null;
+			}
+		}
+
+		static boolean isSpecial(int code) {
+			return code <= OTHER;
+		}
+
+		@Override
+		void clear() {
+			others.clear();
+		}
+	}
+
+	/**
+	 * Integers or IntegerWithUnit values with the same unit and scale, e.g. ping times
+	 */
+	static class IntColumn extends PrimitiveColumn {
+		private int[] values;
+		/** unit of all values, null for plain Integers */
+		private String unitLabel;
+		private int scale;
+
+		IntColumn(int capacity) {
+			values = new int[capacity];
+		}
+
+		@Override
+		Object get(int row) {
+			int value = values[row];
+			if (isSpecial(value)) return decodeSpecial(row, value);
+			return unitLabel != null ? new IntegerWithUnit(value, scale, unitLabel) : (Object) value;
+		}
+
+		@Override
+		void set(int row, Object value) {
+			if (value instanceof IntegerWithUnit && isSameUnit((IntegerWithUnit) value) && fits(((IntegerWithUnit) value).getValue())) {
+				unitLabel = ((IntegerWithUnit) value).getUnitLabel();
+				scale = ((IntegerWithUnit) value).getScale();
+				values[row] = ((IntegerWithUnit) value).getValue();
+			}
+			else if (value instanceof Integer && unitLabel == null && fits((Integer) value))
+				values[row] = (Integer) value;
+			else
+				values[row] = encodeSpecial(row, value);
+		}
+
+		private boolean isSameUnit(IntegerWithUnit value) {
+			return unitLabel == null || unitLabel.equals(value.getUnitLabel()) && scale == value.getScale();
+		}
+
+		private static boolean fits(int value) {
+			return !isSpecial(value);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+		}
+
+		@Override
+		void clear() {
+			super.clear();
+			unitLabel = null;
+			scale = 0;
+		}
+	}
+
+	/**
+	 * Port lists, all numbers are packed into a single shared array
+	 */
+	static class PortsColumn extends PrimitiveColumn {
+		/** offset of row's ports in {@link #ports} or a special code */
+		private int[] offsets;
+		private int[] lengths;
+		private int[] ports = new int[256];
+		private int portsSize;
+		private boolean displayAsRanges;
+
+		PortsColumn(int capacity) {
+			offsets = new int[capacity];
+			lengths = new int[capacity];
+		}
+
+		@Override
+		Object get(int row) {
+			int offset = offsets[row];
+			if (isSpecial(offset)) return decodeSpecial(row, offset);
+			return new NumericRangeList(Arrays.copyOfRange(ports, offset, offset + lengths[row]), displayAsRanges);
+		}
+
+		@Override
+		void set(int row, Object value) {
+			if (value instanceof NumericRangeList) {
+				NumericRangeList list = (NumericRangeList) value;
+				// rescanned rows just leave their old ports unused
+				if (portsSize + list.size() > ports.length) ports = Arrays.copyOf(ports, grow(ports.length, portsSize + list.size()));
+				for (int i = 0; i < list.size(); i++) ports[portsSize + i] = list.get(i);
+				offsets[row] = portsSize;
+				lengths[row] = list.size();
+				portsSize += list.size();
+				displayAsRanges = list.isDisplayAsRanges();
+			}
+			else
+				offsets[row] = encodeSpecial(row, value);
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			if (capacity > offsets.length) {
+				offsets = Arrays.copyOf(offsets, grow(offsets.length, capacity));
+				lengths = Arrays.copyOf(lengths, offsets.length);
+			}
+		}
+
+		@Override
+		void clear() {
+			super.clear();
+			portsSize = 0;
+		}
+	}
+
+	/**
+	 * Any values, stored as they are
+	 */
+	static class ObjectColumn extends ResultColumn {
+		private Object[] values;
+
+		ObjectColumn(int capacity) {
+			values = new Object[capacity];
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		void set(int row, Object value) {
+			values[row] = value;
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+		}
+
+		@Override
+		void clear() {
+			Arrays.fill(values, null);
+		}
+	}
+}
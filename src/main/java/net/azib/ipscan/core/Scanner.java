@@ -5,18 +5,32 @@
  */
 package net.azib.ipscan.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.values.NotAvailable;
 import net.azib.ipscan.core.values.NotScanned;
 import net.azib.ipscan.fetchers.Fetcher;
 import net.azib.ipscan.fetchers.FetcherRegistry;
+import net.azib.ipscan.fetchers.HostnameFetcher;
+import net.azib.ipscan.fetchers.NetBIOSInfoFetcher;
+import net.azib.ipscan.fetchers.PingFetcher;
 
 /**
  * Scanner functionality is encapsulated in this class.
  * It uses a list of fetchers to perform the actual scanning.
+ * If {@link ScannerConfig#parallelFetchers} is enabled, independent fetchers of an address run concurrently,
+ * see {@link Fetcher#getRequiredParameters()}.
  *
  * @author Anton Keks
  */
@@ -24,7 +38,11 @@ import net.azib.ipscan.fetchers.FetcherRegistry;
 @RequiredArgsConstructor
 public class Scanner {
 	private final FetcherRegistry fetcherRegistry;
-	private final Map<Long, Fetcher> activeFetchers = new ConcurrentHashMap<>();
+	private final ScannerConfig config;
+	/** fetchers currently running for each scanning thread */
+	private final Map<Long, Set<Fetcher>> activeFetchers = new ConcurrentHashMap<>();
+	/** runs fetchers of addresses concurrently, null if disabled */
+	private volatile ExecutorService fetcherExecutor;
 
 	/**
 	 * Executes all registered fetchers for the current IP address.
@@ -32,55 +50,206 @@ public class Scanner {
 	 * @param result where the results are injected
 	 */
 	public void scan(ScanningSubject subject, ScanningResult result) {
+		AddressScan scan = new AddressScan(subject, new ArrayList<>(fetcherRegistry.getSelectedFetchers()));
+		activeFetchers.put(scan.scanningThread.getId(), scan.running);
+		try {
+			ExecutorService executor = fetcherExecutor;
+			if (executor != null)
+				scan.runConcurrently(executor);
+			else
+				scan.runSequentially();
+		}
+		finally {
+			activeFetchers.remove(scan.scanningThread.getId());
+		}
+
 		// populate results
+		for (int fetcherIndex = 0; fetcherIndex < scan.values.length(); fetcherIndex++) {
+			Object value = scan.values.get(fetcherIndex);
+			result.setValue(fetcherIndex, value != null ? value : NotScanned.VALUE);
+		}
+		result.setType(subject.getResultType());
+	}
+
+	/**
+	 * Fills the result of a pinged address, which will not be scanned any further,
+	 * e.g. because it is dead or the scan has been stopped.
+	 * Only the ping fetchers run, reusing the ping result remembered in the subject, other fetchers are not scanned.
+	 */
+	public void scanPingOnly(ScanningSubject subject, ScanningResult result) {
 		int fetcherIndex = 0;
-		boolean isScanningInterrupted = false;
 		for (Fetcher fetcher : fetcherRegistry.getSelectedFetchers()) {
 			Object value = NotScanned.VALUE;
-			try {
-				activeFetchers.put(Thread.currentThread().getId(), fetcher);
-				if (!subject.isAddressAborted() && !isScanningInterrupted) {
-					// run the fetcher
+			if (fetcher instanceof PingFetcher) {
+				try {
 					value = fetcher.scan(subject);
-					// check if scanning was interrupted
-					isScanningInterrupted = Thread.currentThread().isInterrupted();
-					if (value == null)
-						value = isScanningInterrupted ? NotScanned.VALUE : NotAvailable.VALUE;
+					if (value == null) value = NotAvailable.VALUE;
+				}
+				catch (RuntimeException e) {
+					log.error(e);
 				}
 			}
-			catch (Throwable e) {
-				log.error(e);
-			}
-			// store the value
-			result.setValue(fetcherIndex, value);
-			fetcherIndex++;
+			result.setValue(fetcherIndex++, value);
 		}
-		activeFetchers.remove(Thread.currentThread().getId());
-
 		result.setType(subject.getResultType());
 	}
 
+	/**
+	 * @return the first selected ping fetcher, or null if pinging is not selected
+	 */
+	public PingFetcher getPingFetcher() {
+		for (Fetcher fetcher : fetcherRegistry.getSelectedFetchers()) {
+			if (fetcher instanceof PingFetcher) return (PingFetcher) fetcher;
+		}
+		return null;
+	}
+
+	/**
+	 * Lets the fetchers running in the thread release resources bound to it, see {@link Fetcher#interrupt(Thread)}
+	 */
 	public void interrupt(Thread thread) {
-		Fetcher fetcher = activeFetchers.get(thread.getId());
-		if (fetcher != null) fetcher.cleanup();
+		Set<Fetcher> fetchers = activeFetchers.get(thread.getId());
+		if (fetchers != null) fetchers.forEach(fetcher -> fetcher.interrupt(thread));
 	}
 
 	/**
 	 * Init everything needed for scanning, including Fetchers
 	 */
 	public void init() {
+		config.packetRateLimiter.reset(config.maxPacketsPerSecond, config.adaptPacketRate);
+		config.pingUntilAlive = fetcherRegistry.getSelectedFetchers().stream().noneMatch(Fetcher::needsAllPingReplies);
+		if (fetcherRegistry.getSelectedFetchers().stream().anyMatch(fetcher -> fetcher instanceof HostnameFetcher || fetcher instanceof NetBIOSInfoFetcher))
+			config.netBIOSResolver.open();
 		for (Fetcher fetcher : fetcherRegistry.getSelectedFetchers()) {
 			fetcher.init();
 		}
+		if (config.parallelFetchers)
+			fetcherExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Fetcher-", 0).factory());
 	}
 
 	/**
 	 * Cleanup after a scan
 	 */
 	public void cleanup() {
+		ExecutorService executor = fetcherExecutor;
+		fetcherExecutor = null;
+		if (executor != null) executor.shutdownNow();
 		activeFetchers.clear();
 		for (Fetcher fetcher : fetcherRegistry.getSelectedFetchers()) {
 			fetcher.cleanup();
 		}
+		config.netBIOSResolver.close();
+	}
+
+	/**
+	 * Scanning of a single address by all the fetchers
+	 */
+	private static class AddressScan {
+		private final ScanningSubject subject;
+		private final List<Fetcher> fetchers;
+		private final AtomicReferenceArray<Object> values;
+		/** fetchers are NotScanned after this thread is interrupted */
+		private final Thread scanningThread = Thread.currentThread();
+		private final Set<Fetcher> running = ConcurrentHashMap.newKeySet();
+		private final Set<Thread> fetcherThreads = ConcurrentHashMap.newKeySet();
+		private final CompletableFuture<?>[] tasks;
+		private final boolean[] scheduling;
+
+		AddressScan(ScanningSubject subject, List<Fetcher> fetchers) {
+			this.subject = subject;
+			this.fetchers = fetchers;
+			this.values = new AtomicReferenceArray<>(fetchers.size());
+			this.tasks = new CompletableFuture<?>[fetchers.size()];
+			this.scheduling = new boolean[fetchers.size()];
+		}
+
+		void runSequentially() {
+			for (int i = 0; i < fetchers.size(); i++) {
+				values.set(i, runFetcher(fetchers.get(i)));
+			}
+		}
+
+		/**
+		 * Fetchers that may abort scanning of the address run first, in order.
+		 * All other fetchers then run concurrently, each one as soon as the fetchers
+		 * providing its required parameters have finished.
+		 */
+		void runConcurrently(ExecutorService executor) {
+			for (int i = 0; i < fetchers.size(); i++) {
+				if (fetchers.get(i).mayAbortScanning()) {
+					values.set(i, runFetcher(fetchers.get(i)));
+					tasks[i] = CompletableFuture.completedFuture(null);
+				}
+			}
+
+			for (int i = 0; i < fetchers.size(); i++) {
+				schedule(i, executor);
+			}
+
+			try {
+				CompletableFuture.allOf(tasks).get();
+			}
+			catch (InterruptedException e) {
+				// stop the fetchers that are still running, the rest will not be scanned
+				fetcherThreads.forEach(Thread::interrupt);
+				scanningThread.interrupt();
+			}
+			catch (ExecutionException e) {
+				// most likely the executor has been shut down
+				log.warn("Fetchers of " + subject + " failed", e.getCause());
+			}
+		}
+
+		private CompletableFuture<?> schedule(int i, ExecutorService executor) {
+			if (tasks[i] != null) return tasks[i];
+
+			scheduling[i] = true;
+			Fetcher fetcher = fetchers.get(i);
+			List<CompletableFuture<?>> dependencies = new ArrayList<>();
+			for (String parameter : fetcher.getRequiredParameters()) {
+				for (int j = 0; j < fetchers.size(); j++) {
+					// circular dependencies are ignored
+					if (j != i && !scheduling[j] && fetchers.get(j).getProvidedParameters().contains(parameter))
+						dependencies.add(schedule(j, executor));
+				}
+			}
+
+			tasks[i] = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+				Thread thread = Thread.currentThread();
+				fetcherThreads.add(thread);
+				try {
+					values.set(i, runFetcher(fetcher));
+				}
+				finally {
+					fetcherThreads.remove(thread);
+				}
+			}, executor);
+			scheduling[i] = false;
+			return tasks[i];
+		}
+
+		private Object runFetcher(Fetcher fetcher) {
+			Object value = NotScanned.VALUE;
+			if (subject.isAddressAborted() || scanningThread.isInterrupted())
+				return value;
+
+			running.add(fetcher);
+			try {
+				// run the fetcher
+				value = fetcher.scan(subject);
+				if (value == null) {
+					// check if scanning was interrupted
+					boolean isScanningInterrupted = scanningThread.isInterrupted() || Thread.currentThread().isInterrupted();
+					value = isScanningInterrupted ? NotScanned.VALUE : NotAvailable.VALUE;
+				}
+			}
+			catch (Throwable e) {
+				log.error(e);
+			}
+			finally {
+				running.remove(fetcher);
+			}
+			return value;
+		}
 	}
 }
@@ -9,17 +9,29 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static net.azib.ipscan.core.state.ScanningState.KILLING;
 import static net.azib.ipscan.core.state.ScanningState.SCANNING;
 
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.log4j.Log4j2;
 import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.net.PingResult;
 import net.azib.ipscan.core.state.ScanningState;
 import net.azib.ipscan.core.state.StateMachine;
 import net.azib.ipscan.core.state.StateMachine.Transition;
 import net.azib.ipscan.core.state.StateTransitionListener;
-import net.azib.ipscan.feeders.RangeFeeder;
+import net.azib.ipscan.feeders.Feeder;
+import net.azib.ipscan.fetchers.PingFetcher;
 import net.azib.ipscan.util.InetAddressUtils;
+import net.azib.ipscan.util.RateLimiter;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -27,24 +39,32 @@ import org.jetbrains.annotations.NotNull;
  *
  * @author Anton Keks
  */
+@Log4j2
 public class ScannerDispatcherThread extends Thread implements ThreadFactory, StateTransitionListener {
 
 	private static final long UI_UPDATE_INTERVAL_MS = 1000;
+	/** how often the state is checked while all the scanning threads are busy */
+	private static final long PERMIT_WAIT_MS = 100;
 
 	private final ScannerConfig config;
 	private final Scanner scanner;
 	private final StateMachine stateMachine;
 	private final ScanningResultList scanningResultList;
-	private final RangeFeeder feeder;
+	private final Feeder feeder;
 
 	private final AtomicInteger numActiveThreads = new AtomicInteger();
+	/** one permit per address that may be scanned concurrently */
+	private final Semaphore permits;
+	private final RateLimiter hostRateLimiter;
 	ThreadGroup threadGroup;
+	/** virtual threads cannot join a custom ThreadGroup, so they are tracked here for interruption */
+	final Set<Thread> virtualThreads = ConcurrentHashMap.newKeySet();
 	ExecutorService threadPool;
 
 	private final ScanningProgressCallback progressCallback;
 	private final ScanningResultCallback resultsCallback;
 
-	public ScannerDispatcherThread(RangeFeeder feeder, Scanner scanner, StateMachine stateMachine, ScanningProgressCallback progressCallback, ScanningResultList scanningResults, ScannerConfig scannerConfig, ScanningResultCallback resultsCallback) {
+	public ScannerDispatcherThread(Feeder feeder, Scanner scanner, StateMachine stateMachine, ScanningProgressCallback progressCallback, ScanningResultList scanningResults, ScannerConfig scannerConfig, ScanningResultCallback resultsCallback) {
 		setName(getClass().getSimpleName());
 		this.config = scannerConfig;
 		this.stateMachine = stateMachine;
@@ -52,7 +72,16 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		this.resultsCallback = resultsCallback;
 
 		this.threadGroup = new ThreadGroup(getName());
-		this.threadPool = Executors.newFixedThreadPool(config.maxThreads, this);
+		this.hostRateLimiter = new RateLimiter(config.maxHostsPerSecond);
+		if (config.useVirtualThreads) {
+			// the limit of concurrently scanned addresses is enforced by the permits, not by the pool size
+			this.permits = new Semaphore(config.maxVirtualThreads);
+			this.threadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(getName() + "-", 0).factory());
+		}
+		else {
+			this.permits = new Semaphore(config.maxThreads);
+			this.threadPool = Executors.newFixedThreadPool(config.maxThreads, this);
+		}
 
 		// this thread is daemon because we want JVM to terminate it
 		// automatically if user closes the program (Main thread, that is)
@@ -77,39 +106,13 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		try {
 			// register this scan specific listener
 			stateMachine.addTransitionListener(this);
-			long lastNotifyTime = 0;
 
 			try {
-				ScanningSubject subject = null;
-				while(feeder.hasNext() && stateMachine.inState(SCANNING)) {
-					// make a small delay between thread creation
-					Thread.sleep(config.threadDelay);
-
-					if ((numActiveThreads.intValue() < config.maxThreads)) {
-						// retrieve the next IP address to scan
-						subject = feeder.next();
-
-						// check if this is a likely broadcast address and needs to be skipped
-						if (config.skipBroadcastAddresses && InetAddressUtils.isLikelyBroadcast(subject.getAddress())) {
-							continue;
-						}
-
-						// prepare results receiver for upcoming results
-						ScanningResult result = scanningResultList.createResult(subject.getAddress());
-						resultsCallback.prepareForResults(result);
-
-						// scan each IP in parallel, in a separate thread
-						AddressScannerTask scanningTask = new AddressScannerTask(subject, result);
-						threadPool.execute(scanningTask);
-					}
-
-					// notify listeners of the progress we are doing (limiting the update rate)
-					long now = System.currentTimeMillis();
-					if (now - lastNotifyTime >= UI_UPDATE_INTERVAL_MS && subject != null) {
-						lastNotifyTime = now;
-						progressCallback.updateProgress(subject.getAddress().getHostAddress(), numActiveThreads.intValue(), feeder.getPercentageComplete());
-					}
-				}
+				PingFetcher pingFetcher = scanner.getPingFetcher();
+				if (config.twoPhaseScan && pingFetcher != null)
+					sweepThenScanLiveHosts(pingFetcher);
+				else
+					scanAllHosts();
 			}
 			catch (InterruptedException e) {
 				// interrupt - end the loop
@@ -143,6 +146,157 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		}
 	}
 
+	private void scanAllHosts() throws InterruptedException {
+		long lastNotifyTime = 0;
+		ScanningSubject subject = null;
+		while(feeder.hasNext() && stateMachine.inState(SCANNING)) {
+			// wait for a scanning thread to finish if all of them are busy, waking up to check the state
+			if (permits.tryAcquire(PERMIT_WAIT_MS, MILLISECONDS)) {
+				// retrieve the next IP address to scan
+				subject = feeder.next();
+
+				// check if this is a likely broadcast address and needs to be skipped
+				if (config.skipBroadcastAddresses && InetAddressUtils.isLikelyBroadcast(subject.getAddress())) {
+					permits.release();
+					continue;
+				}
+
+				// pacing, if configured
+				acquireHostRate(permits);
+
+				// scan each IP in parallel, in a separate thread
+				start(threadPool, new AddressScannerTask(subject, prepareResult(subject)), permits);
+			}
+
+			// notify listeners of the progress we are doing (limiting the update rate)
+			long now = System.currentTimeMillis();
+			if (now - lastNotifyTime >= UI_UPDATE_INTERVAL_MS && subject != null) {
+				lastNotifyTime = now;
+				progressCallback.updateProgress(subject.getAddress().getHostAddress(), numActiveThreads.intValue(), feeder.getPercentageComplete());
+			}
+		}
+	}
+
+	/**
+	 * Phase one pings all the addresses with many concurrent virtual threads.
+	 * Live hosts stop being pinged at their first reply, dead hosts are finished by this thread right away.
+	 * Phase two runs all the fetchers on the live hosts (all of them, if dead hosts are scanned)
+	 * with the usual limit of scanning threads. The pinging results of dead hosts are reused by the ping fetchers,
+	 * live hosts are pinged again only if round trip times or packet loss are fetched.
+	 */
+	private void sweepThenScanLiveHosts(PingFetcher pingFetcher) throws InterruptedException {
+		Queue<ScanningSubject> liveHosts = new ConcurrentLinkedQueue<>();
+		Queue<ScanningSubject> deadHosts = new ConcurrentLinkedQueue<>();
+		Semaphore sweepPermits = new Semaphore(config.maxSweepPings);
+		ExecutorService sweepPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(getName() + "-sweep-", 0).factory());
+		long lastNotifyTime = 0;
+		try {
+			ScanningSubject subject = null;
+			while (feeder.hasNext() && stateMachine.inState(SCANNING)) {
+				if (sweepPermits.tryAcquire(PERMIT_WAIT_MS, MILLISECONDS)) {
+					subject = feeder.next();
+					if (config.skipBroadcastAddresses && InetAddressUtils.isLikelyBroadcast(subject.getAddress())) {
+						sweepPermits.release();
+						continue;
+					}
+					acquireHostRate(sweepPermits);
+					start(sweepPool, new SweepTask(subject, pingFetcher, sweepPermits, liveHosts, deadHosts), sweepPermits);
+				}
+				finishDeadHosts(deadHosts);
+
+				long now = System.currentTimeMillis();
+				if (now - lastNotifyTime >= UI_UPDATE_INTERVAL_MS && subject != null) {
+					lastNotifyTime = now;
+					progressCallback.updateProgress("Sweep: " + subject.getAddress().getHostAddress(), numActiveThreads.intValue(), feeder.getPercentageComplete());
+				}
+			}
+		}
+		finally {
+			sweepPool.shutdown();
+		}
+		while (!sweepPool.awaitTermination(UI_UPDATE_INTERVAL_MS, MILLISECONDS)) {
+			finishDeadHosts(deadHosts);
+			progressCallback.updateProgress("Sweep: waiting for replies", numActiveThreads.intValue(), 100);
+		}
+		finishDeadHosts(deadHosts);
+
+		int liveHostCount = liveHosts.size();
+		int started = 0;
+		lastNotifyTime = 0;
+		while (!liveHosts.isEmpty() && stateMachine.inState(SCANNING)) {
+			if (permits.tryAcquire(PERMIT_WAIT_MS, MILLISECONDS)) {
+				ScanningSubject subject = liveHosts.poll();
+				start(threadPool, new AddressScannerTask(subject, prepareResult(subject)), permits);
+				started++;
+			}
+
+			long now = System.currentTimeMillis();
+			if (now - lastNotifyTime >= UI_UPDATE_INTERVAL_MS) {
+				lastNotifyTime = now;
+				progressCallback.updateProgress("Scan: %d of %d live hosts".formatted(started, liveHostCount), numActiveThreads.intValue(), started * 100.0 / liveHostCount);
+			}
+		}
+
+		// the scan has been stopped, live hosts found so far are still reported, with their ping results only
+		ScanningSubject subject;
+		while ((subject = liveHosts.poll()) != null) {
+			ScanningResult result = prepareResult(subject);
+			scanner.scanPingOnly(subject, result);
+			resultsCallback.consumeResults(result);
+		}
+	}
+
+	/**
+	 * Reports results of the dead hosts found by the sweep so far.
+	 * This is done here rather than in the sweep tasks, so that results are produced by a single thread.
+	 * Only the ping fetchers are run, reusing the sweep's ping results, so nothing blocks.
+	 */
+	private void finishDeadHosts(Queue<ScanningSubject> deadHosts) {
+		ScanningSubject subject;
+		while ((subject = deadHosts.poll()) != null) {
+			ScanningResult result = prepareResult(subject);
+			scanner.scanPingOnly(subject, result);
+			resultsCallback.consumeResults(result);
+		}
+	}
+
+	/**
+	 * Waits for the host rate limit, giving the permit taken for the host back if interrupted
+	 */
+	private void acquireHostRate(Semaphore taskPermits) throws InterruptedException {
+		try {
+			hostRateLimiter.acquire();
+		}
+		catch (InterruptedException e) {
+			taskPermits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a task, which has already been counted in numActiveThreads and holds one of the permits.
+	 * If the pool rejects it, both are given back, as the task will never run to release them.
+	 */
+	private void start(ExecutorService pool, Runnable task, Semaphore taskPermits) {
+		try {
+			pool.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			numActiveThreads.decrementAndGet();
+			taskPermits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Prepares results receiver for upcoming results
+	 */
+	private ScanningResult prepareResult(ScanningSubject subject) {
+		ScanningResult result = scanningResultList.createResult(subject.getAddress());
+		resultsCallback.prepareForResults(result);
+		return result;
+	}
+
 	/**
 	 * Local stateMachine transition listener.
 	 * Currently used to kill all running threads if user says so.
@@ -151,6 +305,11 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		if (state == KILLING) {
 			// try to interrupt all threads if we get to killing state
 			threadGroup.interrupt();
+			for (Thread thread : virtualThreads) {
+				// virtual threads cannot override interrupt(), so notify the scanner explicitly
+				scanner.interrupt(thread);
+				thread.interrupt();
+			}
 		}
 	}
 
@@ -171,6 +330,54 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		};
 	}
 
+	/**
+	 * Pings a single address during the liveness sweep.
+	 * Live hosts are left for the second phase, dead ones are queued for the dispatcher to report.
+	 */
+	class SweepTask implements Runnable {
+		private final ScanningSubject subject;
+		private final PingFetcher pingFetcher;
+		private final Semaphore sweepPermits;
+		private final Queue<ScanningSubject> liveHosts;
+		private final Queue<ScanningSubject> deadHosts;
+
+		SweepTask(ScanningSubject subject, PingFetcher pingFetcher, Semaphore sweepPermits, Queue<ScanningSubject> liveHosts, Queue<ScanningSubject> deadHosts) {
+			this.subject = subject;
+			this.pingFetcher = pingFetcher;
+			this.sweepPermits = sweepPermits;
+			this.liveHosts = liveHosts;
+			this.deadHosts = deadHosts;
+			numActiveThreads.incrementAndGet();
+		}
+
+		public void run() {
+			Thread thread = Thread.currentThread();
+			thread.setName(getClass().getSimpleName() + ": " + subject);
+			virtualThreads.add(thread);
+			if (stateMachine.inState(KILLING)) thread.interrupt();
+
+			try {
+				// pinging completes by itself within this time, the bound is just a guard
+				PingResult pingResult = pingFetcher.checkAliveAsync(subject).get(pingFetcher.getMaxPingTime() + PERMIT_WAIT_MS, MILLISECONDS);
+				if (pingResult.isAlive() || config.scanDeadHosts)
+					liveHosts.add(subject);
+				else
+					deadHosts.add(subject);
+			}
+			catch (InterruptedException | ExecutionException e) {
+				// killed, the address is left unscanned
+			}
+			catch (TimeoutException e) {
+				log.warn("Sweep of {} has not completed in time, the address is left unscanned", subject);
+			}
+			finally {
+				virtualThreads.remove(thread);
+				numActiveThreads.decrementAndGet();
+				sweepPermits.release();
+			}
+		}
+	}
+
 	/**
 	 * This thread gets executed for each scanned IP address to do the actual
 	 * scanning.
@@ -186,15 +393,23 @@ public class ScannerDispatcherThread extends Thread implements ThreadFactory, St
 		}
 
 		public void run() {
+			Thread thread = Thread.currentThread();
 			// set current thread's name to ease debugging
-			Thread.currentThread().setName(getClass().getSimpleName() + ": " + subject);
+			thread.setName(getClass().getSimpleName() + ": " + subject);
+			if (thread.isVirtual()) {
+				virtualThreads.add(thread);
+				// killing may have been requested before this thread was registered
+				if (stateMachine.inState(KILLING)) thread.interrupt();
+			}
 
 			try {
 				scanner.scan(subject, result);
 				resultsCallback.consumeResults(result);
 			}
 			finally {
+				virtualThreads.remove(thread);
 				numActiveThreads.decrementAndGet();
+				permits.release();
 			}
 		}
 	}
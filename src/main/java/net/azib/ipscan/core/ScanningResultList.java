@@ -7,32 +7,59 @@ package net.azib.ipscan.core;
 
 import static java.util.Collections.emptyList;
 
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import lombok.Getter;
 import net.azib.ipscan.IPScannerService;
+import net.azib.ipscan.core.ScanningResult.ResultType;
 import net.azib.ipscan.fetchers.Fetcher;
 import net.azib.ipscan.fetchers.FetcherRegistry;
+import net.azib.ipscan.util.IntIntMap;
+import net.azib.ipscan.util.IntObjectMap;
 import org.jetbrains.annotations.NotNull;
+import org.savarese.vserv.tcpip.OctetConverter;
 
 /**
  * The holder of scanning results.
+ * Results are stored in columns: IPv4 addresses as ints, result types as bytes and values
+ * of each fetcher in a {@link ResultColumn}, so millions of results don't need millions of objects.
+ * Rows are only appended, while the list is presented with the latest results first.
+ * {@link ScanningResult} objects are only used while scanning and are created on demand for reading.
  *
  * @author Anton Keks
  */
 public class ScanningResultList {
 	private static final int RESULT_LIST_INITIAL_SIZE = 1024;
+	private static final ResultType[] RESULT_TYPES = ResultType.values();
 
 	private final FetcherRegistry fetcherRegistry;
 	// selected fetchers are cached here, because they may be changed in the registry already
 	private List<Fetcher> selectedFetchers = emptyList();
 
-	private final @Getter List<ScanningResult> resultList = new ArrayList<>(RESULT_LIST_INITIAL_SIZE);
-	private final Map<InetAddress, Integer> resultIndexes = new HashMap<>(RESULT_LIST_INITIAL_SIZE);
+	private int size;
+	/** IPv4 addresses as 32-bit words, rows with IPv6 addresses are kept in ipv6Addresses */
+	private int[] addresses = new int[RESULT_LIST_INITIAL_SIZE];
+	/** ResultType ordinals */
+	private byte[] types = new byte[RESULT_LIST_INITIAL_SIZE];
+	/** values of each fetcher */
+	private ResultColumn[] columns = new ResultColumn[0];
+	private final IntIntMap rowIndexes = new IntIntMap(RESULT_LIST_INITIAL_SIZE);
+	private final IntObjectMap<InetAddress> ipv6Addresses = new IntObjectMap<>();
+	private final Map<InetAddress, Integer> ipv6RowIndexes = new HashMap<>();
+
+	private final List<ScanningResult> resultList = new ResultListView();
+	/** rows registered or updated since the last {@link #takeChangedRows()} */
+	private final BitSet changedRows = new BitSet();
+	/** incremented every time the list is cleared */
+	private int generation;
 
 	public ScanningResultList(FetcherRegistry fetcherRegistry) {
 		this.fetcherRegistry = fetcherRegistry;
@@ -47,43 +74,172 @@ public class ScanningResultList {
 	}
 
 	/**
-	 * Creates the new results holder for particular address or returns an existing one.
+	 * @return all the results as a read-only view, the latest results first.
+	 * Elements are created on access and are not updated afterwards.
+	 */
+	public List<ScanningResult> getResultList() {
+		return resultList;
+	}
+
+	/**
+	 * Creates the new results holder for particular address or returns the existing results.
 	 * @return pre-initialized empty ScanningResult
 	 */
 	public synchronized ScanningResult createResult(InetAddress address) {
-		Integer index = resultIndexes.get(address);
-		if (index == null) {
+		int row = rowOf(address);
+		if (row < 0) {
 			return new ScanningResult(address, fetcherRegistry.getSelectedFetchers().size());
 		}
-		return resultList.get(index);
+		return resultAt(row);
 	}
 
 	/**
-	 * Registers the provided results holder at the specified index in this list.
-	 * This index will later be used to retrieve the result when redrawing items.
-	 * TODO: index parameter is not really needed here - add method with index will not work with sparse lists anyway
+	 * Registers the provided results holder in this list, it will appear first.
+	 * Values of the holder are copied to the list with {@link #update(ScanningResult)}.
 	 */
-	public synchronized void registerAtIndex(int index, ScanningResult result) {
-		if (resultIndexes.put(result.getAddress(), index) != null)
+	public synchronized void register(ScanningResult result) {
+		if (rowOf(result.getAddress()) >= 0)
 			throw new IllegalStateException(result.getAddress() + " is already registered in the list");
 
+		int row = size;
+		ensureCapacity(row + 1);
+		if (result.getAddress() instanceof Inet4Address) {
+			int address = toWord(result.getAddress());
+			addresses[row] = address;
+			rowIndexes.put(address, row);
+		}
+		else {
+			ipv6Addresses.put(row, result.getAddress());
+			ipv6RowIndexes.put(result.getAddress(), row);
+		}
+		size++;
+
 		result.resultList = this;
-		resultList.add(index, result);
+		store(row, result);
+		changedRows.set(row);
 	}
 
 	/**
 	 * @return true if the provided result holder exists in the list.
 	 */
 	public synchronized boolean isRegistered(ScanningResult result) {
-		return resultIndexes.containsKey(result.getAddress());
+		return rowOf(result.getAddress()) >= 0;
 	}
 
 	/**
-	 * Updates statistics.
+	 * Copies values of the registered result holder to the list.
 	 * @return the index of the result in the list, if it is registered.
 	 */
 	public synchronized int update(ScanningResult result) {
-		return resultIndexes.get(result.getAddress());
+		int row = rowOf(result.getAddress());
+		store(row, result);
+		changedRows.set(row);
+		return toIndex(row);
+	}
+
+	private void store(int row, ScanningResult result) {
+		types[row] = (byte) result.getType().ordinal();
+		List<Object> values = result.getValues();
+		for (int i = 0; i < columns.length && i < values.size(); i++) {
+			columns[i].set(row, values.get(i));
+		}
+	}
+
+	/**
+	 * @return number of results in the list
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized InetAddress getAddress(int index) {
+		return addressAt(toRow(index));
+	}
+
+	public synchronized ResultType getType(int index) {
+		return RESULT_TYPES[types[toRow(index)]];
+	}
+
+	/**
+	 * @return the value of a fetcher without creating of a ScanningResult
+	 */
+	public synchronized Object getValue(int index, int fetcherIndex) {
+		return columns[fetcherIndex].get(toRow(index));
+	}
+
+	/**
+	 * Rows are positions of results in order of registration, they don't change when new results are added.
+	 * @return the current index of the result at the specified row
+	 */
+	public synchronized int indexOfRow(int row) {
+		return toIndex(row);
+	}
+
+	/**
+	 * @return rows that were registered or updated since the previous call
+	 */
+	public synchronized BitSet takeChangedRows() {
+		BitSet rows = (BitSet) changedRows.clone();
+		changedRows.clear();
+		return rows;
+	}
+
+	/**
+	 * @return a number that changes every time the list is cleared
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+
+	private int toRow(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		return size - 1 - index;
+	}
+
+	private int toIndex(int row) {
+		return size - 1 - row;
+	}
+
+	private int rowOf(InetAddress address) {
+		if (address instanceof Inet4Address)
+			return rowIndexes.get(toWord(address));
+		Integer row = ipv6RowIndexes.get(address);
+		return row == null ? -1 : row;
+	}
+
+	private InetAddress addressAt(int row) {
+		InetAddress address = ipv6Addresses.get(row);
+		if (address != null) return address;
+		try {
+			byte[] octets = new byte[4];
+			OctetConverter.intToOctets(addresses[row], octets);
+			return InetAddress.getByAddress(octets);
+		}
+		catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private ScanningResult resultAt(int row) {
+		ScanningResult result = new ScanningResult(addressAt(row), columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			result.setValue(i, columns[i].get(row));
+		}
+		result.setType(RESULT_TYPES[types[row]]);
+		result.resultList = this;
+		return result;
+	}
+
+	private static int toWord(InetAddress address) {
+		return OctetConverter.octetsToInt(address.getAddress());
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > addresses.length) {
+			addresses = Arrays.copyOf(addresses, ResultColumn.grow(addresses.length, capacity));
+			types = Arrays.copyOf(types, addresses.length);
+		}
+		for (ResultColumn column : columns) column.ensureCapacity(addresses.length);
 	}
 
 	/**
@@ -91,13 +247,26 @@ public class ScanningResultList {
 	 */
 	public synchronized void clear() {
 		// clear the results
-		resultList.clear();
-		resultIndexes.clear();
+		size = 0;
+		generation++;
+		changedRows.clear();
+		rowIndexes.clear();
+		ipv6Addresses.clear();
+		ipv6RowIndexes.clear();
+		for (ResultColumn column : columns) column.clear();
 	}
 
 	public synchronized void initNewScan() {
 		// reload currently selected fetchers
-		selectedFetchers = new ArrayList<>(fetcherRegistry.getSelectedFetchers());
+		List<Fetcher> newFetchers = new ArrayList<>(fetcherRegistry.getSelectedFetchers());
+		// keep the existing columns of fetchers that are still selected, e.g. when scanning is continued
+		ResultColumn[] newColumns = new ResultColumn[newFetchers.size()];
+		for (int i = 0; i < newColumns.length; i++) {
+			int oldIndex = selectedFetchers.indexOf(newFetchers.get(i));
+			newColumns[i] = oldIndex >= 0 ? columns[oldIndex] : ResultColumn.forFetcher(newFetchers.get(i).getFetcherID(), addresses.length);
+		}
+		selectedFetchers = newFetchers;
+		columns = newColumns;
 	}
 
 	/**
@@ -117,4 +286,21 @@ public class ScanningResultList {
 		}
 		return -1;
 	}
+
+	/**
+	 * Read-only view of the rows, the latest first
+	 */
+	private class ResultListView extends AbstractList<ScanningResult> {
+		@Override
+		public ScanningResult get(int index) {
+			synchronized (ScanningResultList.this) {
+				return resultAt(toRow(index));
+			}
+		}
+
+		@Override
+		public int size() {
+			return ScanningResultList.this.size();
+		}
+	}
 }
@@ -13,6 +13,7 @@ import net.azib.ipscan.core.net.PingResult;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Scanning subject represents a single scanned
@@ -32,24 +33,26 @@ public class ScanningSubject {
 	@Getter private InetAddress address;
 	/** The requested ports that the user wishes to put more attention to, can be null. E.g. port 3128 for scanning of proxy servers. */
 	private List<Integer> requestedPorts;
-	/** Arbitrary parameters for sharing among different (but related) Fetchers */
+	/** Arbitrary parameters for sharing among different (but related) Fetchers, which may run concurrently */
 	private final Map<String, Object> parameters;
+	/** Stands for null values in parameters */
+	private static final Object NULL = new Object();
 	/** The result type constant value, can be modified by some Fetchers
 	 * -- GETTER --
 	 *
    */
-	@Getter private ResultType resultType = ResultType.UNKNOWN;
+	@Getter private volatile ResultType resultType = ResultType.UNKNOWN;
 	/** Whether we need to continue scanning or it can be aborted */
-	private boolean isAborted = false;
+	private volatile boolean isAborted = false;
 	/** Adapted after pinging port timeout - any fetcher can make use of it */
-	int adaptedPortTimeout = -1;
+	volatile int adaptedPortTimeout = -1;
 
 	/**
 	 * This constructor should only be used by the Scanner class or unit tests.
 	 */
 	public ScanningSubject(InetAddress address, ScannerConfig scannerConfig) {
 		this.address = address;
-		this.parameters = new HashMap<>(); // single-threaded access only
+		this.parameters = new ConcurrentHashMap<>(4);
 		this.config = scannerConfig;
 	}
 
@@ -61,7 +64,16 @@ public class ScanningSubject {
 	 * Sets a subject specific named parameter.
 	 */
 	public void setParameter(String name, Object value) {
-		parameters.put(name, value);
+		parameters.put(name, value != null ? value : NULL);
+	}
+
+	/**
+	 * Atomically sets a subject specific named parameter, if it was not set yet.
+	 * @return the existing value or null if the parameter was set
+	 */
+	public Object setParameterIfAbsent(String name, Object value) {
+		Object existing = parameters.putIfAbsent(name, value != null ? value : NULL);
+		return existing != NULL ? existing : null;
 	}
 
 	/**
@@ -69,7 +81,8 @@ public class ScanningSubject {
 	 * previosly set by setParameter().
 	 */
 	public Object getParameter(String name) {
-		return parameters.get(name);
+		Object value = parameters.get(name);
+		return value != NULL ? value : null;
 	}
 
 	/**
@@ -134,7 +147,7 @@ public class ScanningSubject {
 		PingResult pingResult = (PingResult) getParameter(PARAMETER_PING_RESULT);
 		if (pingResult != null) {
 			if (config.adaptPortTimeout && pingResult.isTimeoutAdaptationAllowed()) {
-				adaptedPortTimeout = Math.min(Math.max(pingResult.getLongestTime() * 3, config.minPortTimeout), config.portTimeout);
+				adaptedPortTimeout = Math.min(Math.max(pingResult.getAdaptedTimeout(3), config.minPortTimeout), config.portTimeout);
 				return adaptedPortTimeout;
 			}
 		}
@@ -142,6 +155,21 @@ public class ScanningSubject {
 		return config.portTimeout;
 	}
 
+	/**
+	 * Waits for the scan-wide packet rate limit before sending of a probe to this subject.
+	 * @return false if the thread was interrupted while waiting, its interrupted flag is kept
+	 */
+	public boolean acquirePacket() {
+		try {
+			config.packetRateLimiter.acquire();
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
 	public boolean isLocal() {
 		return address.isSiteLocalAddress() || address.isLinkLocalAddress();
 	}
@@ -10,37 +10,30 @@ import net.azib.ipscan.core.ScanningSubject;
 
 import java.io.IOException;
 
-import static java.lang.Math.max;
-
 /**
  * CombinedUnprivilegedPinger - uses both UDP and TCP for pinging.
  * A better default alternative for unprivileged users.
+ * The UDP probe and all the TCP probe ports are raced at once, see {@link ProbeRace},
+ * so a dead host costs a single timeout.
  *
  * @author Anton Keks
  */
 public class CombinedUnprivilegedPinger implements Pinger {
-	private final TCPPinger tcpPinger;
-	private final UDPPinger udpPinger;
+	private final ProbeRace race;
 
 	public CombinedUnprivilegedPinger(int timeout) {
-		udpPinger = new UDPPinger(timeout);
-		tcpPinger = new TCPPinger(timeout);
+		race = new ProbeRace(timeout, true, TCPPinger.PROBE_TCP_PORTS);
 	}
 
 	public PingResult ping(ScanningSubject subject, int count) throws IOException {
-		// try UDP first - it should be more reliable in general
-		int udpCountInitialCount = max(1, count / 2);
-		PingResult udpResult = udpPinger.ping(subject, udpCountInitialCount);
-		if (udpResult.isAlive())
-			return udpResult.merge(udpPinger.ping(subject, count - udpCountInitialCount));
-
-		// fallback to TCP - it may detect some hosts UDP cannot
-		PingResult tcpResult = tcpPinger.ping(subject, count);
-		return tcpResult.merge(udpResult);
+		return ping(subject, count, false);
+	}
+
+	@Override
+	public PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
+		return race.ping(subject, count, untilAlive);
 	}
 
 	public void close() {
-		udpPinger.close();
-		tcpPinger.close();
 	}
 }
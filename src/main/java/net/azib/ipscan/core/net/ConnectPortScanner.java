@@ -0,0 +1,71 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.SortedSet;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.util.ThreadResourceBinder;
+
+/**
+ * ConnectPortScanner - the classic port scanner,
+ * connects to each port with a blocking socket one after another.
+ *
+ * @author Anton Keks
+ */
+public class ConnectPortScanner implements PortScanner {
+
+	private final ThreadResourceBinder<Socket> sockets = new ThreadResourceBinder<>();
+
+	public ConnectPortScanner(ScannerConfig scannerConfig) {
+	}
+
+	@Override
+	public void scanPorts(ScanningSubject subject, Iterator<Integer> ports, int timeout,
+	                      SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts) {
+		while (ports.hasNext() && subject.acquirePacket()) {
+			// TODO: UDP ports?
+			Socket socket = sockets.bind(new Socket());
+			int port = ports.next();
+			try {
+				// set some optimization options
+				socket.setReuseAddress(true);
+				socket.setReceiveBufferSize(32);
+				// now connect
+				socket.connect(new InetSocketAddress(subject.getAddress(), port), timeout);
+				// some more options
+				socket.setSoLinger(true, 0);
+				socket.setSendBufferSize(16);
+				socket.setTcpNoDelay(true);
+
+				if (socket.isConnected()) {openPorts.add(port);}
+			} catch (SocketTimeoutException e) {
+				filteredPorts.add(port);
+			} catch (IOException e) {
+				// connection refused
+				assert e instanceof ConnectException : e;
+			} finally {
+				sockets.closeAndUnbind(socket);
+			}
+		}
+	}
+
+	@Override
+	public void interrupt(Thread thread) {
+		sockets.close(thread);
+	}
+
+	@Override
+	public void close() {
+		sockets.close();
+	}
+}
@@ -5,43 +5,97 @@
  */
 package net.azib.ipscan.core.net;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.savarese.rocksaw.net.RawSocket.closeQuietly;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.util.IntObjectMap;
+import net.azib.ipscan.util.PacketRateLimiter;
+import org.savarese.rocksaw.net.PacketBatch;
 import org.savarese.rocksaw.net.RawSocket;
-import org.savarese.vserv.tcpip.ICMPEchoPacket;
+import org.savarese.vserv.tcpip.ICMPEchoView;
 import org.savarese.vserv.tcpip.ICMPPacket;
 import org.savarese.vserv.tcpip.IPPacket;
+import org.savarese.vserv.tcpip.IPView;
 import org.savarese.vserv.tcpip.OctetConverter;
 
 /**
  * Shared multi-threaded pinger.
+ * A single sender thread sends echo requests of all scanned hosts, limiting the overall rate,
+ * and a single receiver thread completes pending pings as the replies arrive,
+ * so scanning threads don't need to wait for the replies - see {@link #pingAsync}.
  *
  * @author Anton Keks
  */
 @Log4j2
 public class ICMPSharedPinger implements Pinger {
 
+	/** a pause between echo requests sent to the same host */
+	private static final long ECHO_INTERVAL_NANOS = MILLISECONDS.toNanos(15);
+	/** extra time a blocking ping waits for its future in case sending is delayed, in ms */
+	private static final long WAIT_SLACK_MS = 1000;
+	/** the default receive buffer size, so that bursts of replies during large sweeps are not dropped */
+	private static final int DEFAULT_RECEIVE_BUFFER_SIZE = 2 << 20;
+	/** max packets sent or received with a single system call */
+	private static final int BATCH_SIZE = 64;
+	/** echo requests paced to be sent within this time are sent together in a batch, a little early */
+	private static final long BATCH_WINDOW_NANOS = MILLISECONDS.toNanos(1);
+	/** received packets are truncated to this, enough for errors with the IP and ICMP headers of our echo requests */
+	private static final int RECEIVED_PACKET_SIZE = 128;
+
 	/** a single raw socket for sending of all ICMP packets */
 	private final RawSocket sendingSocket;
 	/** a single raw socket for receiving of all ICMP packets */
 	private final RawSocket receivingSocket;
-	/** the map with PingResults, keys are InetAddress */
-	private final Map<InetAddress, PingResult> results = new ConcurrentHashMap<>();
-
+	/** the map with pending pings, keys are IPv4 addresses as 32-bit words, guarded by itself */
+	private final IntObjectMap<PendingPing> results = new IntObjectMap<>();
+	/** echo requests of all pending pings, ordered by the time they should be sent */
+	private final DelayQueue<EchoRequest> sendQueue = new DelayQueue<>();
+	private final Thread senderThread;
 	private final Thread receiverThread;
-
 	private final int timeout;
-	private int timeOffsetInPacket;
+	/** min interval between any two echo requests, zero means no limit */
+	private final long sendIntervalNanos;
+	/** the scan-wide limit, shared with other probes */
+	private final PacketRateLimiter packetRateLimiter;
+	private final int identifier = hashCode() & 0xFFFF;
+	/** echo replies matched to pending pings */
+	private final AtomicLong repliesReceived = new AtomicLong();
+	/** echo replies with our identifier, which arrived too late or from unexpected addresses */
+	private final AtomicLong repliesDropped = new AtomicLong();
+	/** pings completed early, because the network has reported their destinations as unreachable */
+	private final AtomicLong unreachableReceived = new AtomicLong();
+	/** whether the kernel timestamps received packets, so that the receiver's delays don't count in round trip times */
+	private final boolean receiveTimestamps;
 
 	public ICMPSharedPinger(int timeout) throws IOException {
+		this(timeout, 0, DEFAULT_RECEIVE_BUFFER_SIZE, new PacketRateLimiter());
+	}
+
+	public ICMPSharedPinger(int timeout, ScannerConfig scannerConfig) throws IOException {
+		this(timeout, scannerConfig.pingPacketsPerSecond, scannerConfig.pingReceiveBufferSize, scannerConfig.packetRateLimiter);
+	}
+
+	private ICMPSharedPinger(int timeout, int packetsPerSecond, int receiveBufferSize, PacketRateLimiter packetRateLimiter) throws IOException {
 		// we use two shared sockets, because it works more efficiently
 		// OSs tend to copy all received ICMP packets to all open raw sockets,
 		// so it is very bad to have a separate raw socket for each scanning thread
@@ -50,89 +104,313 @@ public class ICMPSharedPinger implements Pinger {
 		receivingSocket = new RawSocket();
 		receivingSocket.open(RawSocket.PF_INET, IPPacket.PROTOCOL_ICMP);
 		this.timeout = timeout;
+		this.sendIntervalNanos = packetsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / packetsPerSecond : 0;
+		this.packetRateLimiter = packetRateLimiter;
 
 		try {
 			sendingSocket.setSendTimeout(timeout);
 			receivingSocket.setReceiveTimeout(timeout);
-			//receivingSocket.setReceiveBufferSize()
 		}
-		catch (java.net.SocketException se) {
+		catch (SocketException se) {
 			sendingSocket.setUseSelectTimeout(true);
 			receivingSocket.setUseSelectTimeout(true);
 			sendingSocket.setSendTimeout(timeout);
 			receivingSocket.setReceiveTimeout(timeout);
 		}
 
+		filterReceivingSocket(receiveBufferSize);
+		receiveTimestamps = enableReceiveTimestamps();
+
 		receiverThread = new PacketReceiverThread();
 		receiverThread.start();
+		senderThread = new PacketSenderThread();
+		senderThread.start();
+	}
+
+	/**
+	 * Lets the kernel drop all the ICMP packets of other programs, so they are not copied to userspace.
+	 * Everything is optional, the receiver thread checks the packets anyway.
+	 */
+	private void filterReceivingSocket(int receiveBufferSize) {
+		try {
+			receivingSocket.setICMPFilter(1 << ICMPPacket.TYPE_ECHO_REPLY | 1 << ICMPPacket.TYPE_HOST_UNREACHABLE | 1 << ICMPPacket.TYPE_TIME_EXCEEDED);
+			receivingSocket.attachFilter(echoFilter(identifier));
+		}
+		catch (SocketException | LinkageError e) {
+			log.info("Unable to filter ICMP packets in the kernel: " + e);
+		}
+		if (receiveBufferSize > 0) {
+			try {
+				receivingSocket.setReceiveBufferSizeForce(receiveBufferSize);
+			}
+			catch (SocketException e) {
+				log.info("Unable to set receive buffer size: " + e);
+			}
+		}
+	}
+
+	private boolean enableReceiveTimestamps() {
+		try {
+			receivingSocket.setReceiveTimestampNs(true);
+			return true;
+		}
+		catch (SocketException | LinkageError e) {
+			log.info("Unable to get receive timestamps from the kernel: " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Classic BPF program, which accepts only echo replies with our identifier and the errors caused by our
+	 * echo requests, assuming that their embedded IP headers have no options, like the ones we send.
+	 */
+	static int[][] echoFilter(int identifier) {
+		return new int[][] {
+			{0xb1, 0, 0, 0},                                 // 0: x = IP header length
+			{0x50, 0, 0, 0},                                 // 1: a = ICMP type
+			{0x15, 0, 2, ICMPPacket.TYPE_ECHO_REPLY},        // 2: echo reply? 3 : 5
+			{0x48, 0, 0, 4},                                 // 3: a = identifier
+			{0x05, 0, 0, 5},                                 // 4: goto 10
+			{0x15, 1, 0, ICMPPacket.TYPE_HOST_UNREACHABLE},  // 5: unreachable? 7 : 6
+			{0x15, 0, 5, ICMPPacket.TYPE_TIME_EXCEEDED},     // 6: time exceeded? 7 : reject
+			{0x50, 0, 0, 8 + 20},                            // 7: a = type of the embedded request
+			{0x15, 0, 3, ICMPPacket.TYPE_ECHO_REQUEST},      // 8: echo request? 9 : reject
+			{0x48, 0, 0, 8 + 20 + 4},                        // 9: a = identifier of the embedded request
+			{0x15, 0, 1, identifier},                        // 10: ours? accept : reject
+			{0x06, 0, 0, 0xFFFF},                            // 11: accept
+			{0x06, 0, 0, 0},                                 // 12: reject
+		};
 	}
 
 	public void close() throws IOException {
+		senderThread.interrupt();
 		synchronized (sendingSocket) {
 			sendingSocket.close();
 		}
 		receiverThread.interrupt();
+		// release everyone who is still waiting
+		for (PendingPing ping : pendingPings()) ping.complete();
+		log.debug("Echo replies received: " + repliesReceived + ", dropped: " + repliesDropped + ", unreachable: " + unreachableReceived);
+	}
+
+	private Iterable<PendingPing> pendingPings() {
+		synchronized (results) {
+			return results.values();
+		}
+	}
+
+	public long getRepliesReceived() {
+		return repliesReceived.get();
+	}
+
+	public long getRepliesDropped() {
+		return repliesDropped.get();
 	}
 
 	public PingResult ping(ScanningSubject subject, int count) throws IOException {
-		InetAddress address = subject.getAddress();
-		PingResult result = new PingResult(address, count);
-		results.put(address, result);
-
-		// TODO: make ICMPEchoPacket accept byte array in the constructor
-		ICMPEchoPacket packet = new ICMPEchoPacket(1);
-		byte[] data = new byte[84];
-		packet.setData(data);
-		packet.setIPHeaderLength(5);
-		packet.setICMPDataByteLength(56);
-		packet.setType(ICMPPacket.TYPE_ECHO_REQUEST);
-		packet.setCode(0);
-		packet.setIdentifier(hashCode() & 0xFFFF); // some identification stuff
+		return ping(subject, count, false);
+	}
 
+	@Override
+	public PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
+		PendingPing ping = startPing(subject.getAddress(), count, untilAlive);
 		try {
-			// send a bunch of packets
-			// note: we send sequence numbers starting from 1 (this is used by the ReceiverThread)
-			for (int i = 1; i <= count  && !Thread.currentThread().isInterrupted(); i++) {
-				packet.setSequenceNumber(i);
+			return ping.future.get((long) timeout * count + WAIT_SLACK_MS, MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			// leave the interrupted flag, return the replies received so far
+			Thread.currentThread().interrupt();
+			ping.complete();
+			return ping.result;
+		}
+		catch (TimeoutException e) {
+			// the requests have not been sent in time, return the replies received so far
+			ping.complete();
+			return ping.result;
+		}
+		catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
 
-				int offset = packet.getIPHeaderByteLength();
-				timeOffsetInPacket = offset + packet.getICMPHeaderByteLength();
-				int length = packet.getICMPPacketByteLength();
+	/**
+	 * Only enqueues the echo requests, the returned future is completed by the receiver thread
+	 * once all the replies arrive, or when the timeout after the last sent request expires.
+	 */
+	@Override
+	public CompletableFuture<PingResult> pingAsync(ScanningSubject subject, int count, boolean untilAlive) {
+		return startPing(subject.getAddress(), count, untilAlive).future;
+	}
 
-				OctetConverter.longToOctets(System.currentTimeMillis(), data, timeOffsetInPacket);
-				packet.computeICMPChecksum();
+	private PendingPing startPing(InetAddress address, int count, boolean untilAlive) {
+		PendingPing ping = new PendingPing(new PingResult(address, count), count, untilAlive);
+		if (count <= 0) {
+			ping.complete();
+			return ping;
+		}
+		if (!(address instanceof Inet4Address)) {
+			ping.future.completeExceptionally(new IOException("Only IPv4 addresses can be pinged with ICMP: " + address));
+			return ping;
+		}
 
-				synchronized (sendingSocket) {
-					sendingSocket.write(result.address, data, offset, length);
-				}
+		int key = OctetConverter.octetsToInt(address.getAddress());
+		PendingPing previous;
+		synchronized (results) {
+			previous = results.put(key, ping);
+		}
+		if (previous != null) previous.complete();
+		// remove garbage
+		ping.future.whenComplete((result, e) -> {
+			synchronized (results) {
+				results.remove(key, ping);
+			}
+		});
 
-				try {
-					// a small pause between sending the packets
-					Thread.sleep(15);
-				}
-				catch (InterruptedException e) {
-					// leave the interrupted flag
-					Thread.currentThread().interrupt();
-				}
+		// note: we send sequence numbers starting from 1 (this is used by the ReceiverThread)
+		long now = System.nanoTime();
+		for (int i = 1; i <= count; i++) {
+			sendQueue.add(new EchoRequest(ping, i, now + (i - 1) * ECHO_INTERVAL_NANOS));
+		}
+		return ping;
+	}
+
+	/**
+	 * A ping in progress, waiting for replies
+	 */
+	private static class PendingPing {
+		final PingResult result;
+		final int count;
+		/** liveness mode, completed by the first reply */
+		final boolean untilAlive;
+		final CompletableFuture<PingResult> future = new CompletableFuture<>();
+		/** the sequence number of the last sent echo request */
+		volatile int sent;
+
+		PendingPing(PingResult result, int count, boolean untilAlive) {
+			this.result = result;
+			this.count = count;
+			this.untilAlive = untilAlive;
+		}
+
+		void complete() {
+			future.complete(result);
+		}
+	}
+
+	/**
+	 * A single echo request scheduled for sending
+	 */
+	private static class EchoRequest implements Delayed {
+		final PendingPing ping;
+		final int sequence;
+		final long sendTime;
+
+		EchoRequest(PendingPing ping, int sequence, long sendTime) {
+			this.ping = ping;
+			this.sequence = sequence;
+			this.sendTime = sendTime;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(sendTime - System.nanoTime(), NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(sendTime, ((EchoRequest) o).sendTime);
+		}
+	}
+
+	/**
+	 * An internal thread for sending of packets
+	 */
+	private class PacketSenderThread extends Thread {
+		public PacketSenderThread() {
+			super("Ping packet sender");
+			setDaemon(true);
+		}
+
+		/** packets of the batch being filled */
+		private final PacketBatch batch = new PacketBatch(BATCH_SIZE, ICMPEchoView.HEADER_LENGTH + 56);
+		private final EchoRequest[] batchRequests = new EchoRequest[BATCH_SIZE];
+		private int batchCount;
+		private final ICMPEchoView echo = new ICMPEchoView();
+
+		public void run() {
+			// echo requests are built in place once, then only their sequence numbers and send times change
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				echo.wrap(batch.packet(i), 0);
+				echo.setType(ICMPPacket.TYPE_ECHO_REQUEST);
+				echo.setCode(0);
+				echo.setIdentifier(identifier); // some identification stuff
+				echo.computeICMPChecksum();
 			}
+			long nextSendTime = System.nanoTime();
 
-			int totalTimeout = timeout * count;
-			while (totalTimeout > 0 && result.getReplyCount() < count) {
-				synchronized (result) {
-					// wait until we have an answer
-					try {
-						result.wait(timeout);
+			try {
+				while (!interrupted()) {
+					// requests that are due right away are batched, the batch is sent once there are no more
+					EchoRequest request = batchCount == 0 ? sendQueue.take() : sendQueue.poll();
+					if (request == null) {
+						sendBatch();
+						continue;
+					}
+					PendingPing ping = request.ping;
+					// already completed, e.g. the scanning thread was interrupted
+					if (ping.future.isDone()) continue;
+
+					long now = System.nanoTime();
+					long delay = Math.max(nextSendTime - now, packetRateLimiter.reserve());
+					if (delay > BATCH_WINDOW_NANOS) {
+						// send times are in the packets, so they must not wait in the batch
+						sendBatch();
+						NANOSECONDS.sleep(delay);
+						now = System.nanoTime();
 					}
-					catch (InterruptedException ignore) {}
+					// requests sent early keep their schedule, so the average rate is still the configured one
+					nextSendTime = Math.max(nextSendTime, now) + sendIntervalNanos;
+
+					echo.wrap(batch.packet(batchCount), 0);
+					echo.setSequenceNumber(request.sequence);
+					// send time is put right after the ICMP echo header, the monotonic clock is fine for our own replies
+					echo.setDataLong(0, System.nanoTime());
+					batch.setAddress(batchCount, OctetConverter.octetsToInt(ping.result.address.getAddress()));
+					batchRequests[batchCount++] = request;
+					if (batchCount == BATCH_SIZE) sendBatch();
 				}
-				totalTimeout -= timeout;
 			}
+			catch (InterruptedException e) {
+				// the pinger is closed
+			}
+			log.debug("Terminated");
+		}
 
-			return result;
+		private void sendBatch() {
+			int sent = 0;
+			while (sent < batchCount) {
+				try {
+					synchronized (sendingSocket) {
+						for (int count = sendingSocket.writeBatch(batch, sent, batchCount - sent); count > 0; count--)
+							sent(batchRequests[sent++]);
+					}
+				}
+				catch (IOException e) {
+					// the error is about the first packet, the rest still can be sent
+					batchRequests[sent++].ping.future.completeExceptionally(e);
+				}
+			}
+			Arrays.fill(batchRequests, 0, batchCount, null);
+			batchCount = 0;
 		}
-		finally {
-			// remove garbage
-			results.remove(address);
+
+		private void sent(EchoRequest request) {
+			PendingPing ping = request.ping;
+			ping.sent = request.sequence;
+			if (request.sequence == ping.count) {
+				// everything is sent, now give the replies some time to arrive
+				ping.future.completeOnTimeout(ping.result, timeout, MILLISECONDS);
+			}
 		}
 	}
 
@@ -140,6 +418,8 @@ public class ICMPSharedPinger implements Pinger {
 	 * An internal thread for receiving of packets
 	 */
 	private class PacketReceiverThread extends Thread {
+		private final IPView ip = new IPView();
+		private final ICMPEchoView echo = new ICMPEchoView();
 
 		public PacketReceiverThread() {
 			super("Ping packet receiver");
@@ -148,12 +428,6 @@ public class ICMPSharedPinger implements Pinger {
 		}
 
 		public void run() {
-			ICMPEchoPacket packet = new ICMPEchoPacket(1);
-			byte[] data = new byte[84];
-			packet.setData(data);
-			packet.setIPHeaderLength(5);
-			packet.setICMPDataByteLength(56);
-
 			// we use this address for receiving
 			// due to some reason, raw sockets return packets coming from any addresses anyway
 			InetAddress tmpAddress = null;
@@ -166,63 +440,115 @@ public class ICMPSharedPinger implements Pinger {
 
 			try {
 				// Windows OS cannot read from a raw socket before anything has been sent through it
-				receivingSocket.write(tmpAddress, data);
+				receivingSocket.write(tmpAddress, new byte[84]);
 			}
 			catch (IOException e) {
 				log.warn("Sending of test packet failed", e);
 			}
 
+			// all the replies that are queued are read at once
+			PacketBatch batch = new PacketBatch(BATCH_SIZE, RECEIVED_PACKET_SIZE, receiveTimestamps);
+
 			do {
 				try {
-					receivingSocket.read(tmpAddress, data);
-
-					if (packet.getType() == ICMPPacket.TYPE_ECHO_REPLY &&
-						packet.getIdentifier() == (ICMPSharedPinger.this.hashCode() & 0xFFFF) &&
-						packet.getSequenceNumber() > 0) {
-
-						long endTime = System.currentTimeMillis();
-
-						PingResult result = results.get(packet.getSourceAsInetAddress());
-						if (result == null) {
-							log.warn("ICMP packet received from an unknown address: " + packet.getSourceAsInetAddress());
-							continue;
-						}
-
-						long startTime = OctetConverter.octetsToLong(data, timeOffsetInPacket);
-						long time = endTime - startTime;
-
-						result.addReply(time);
-						// TTL should be the same among all packets
-						result.setTTL(packet.getTTL() & 0xFF);
-
-						synchronized (result) {
-							// notify the sender that we have an answer :-)
-							result.notifyAll();
-						}
-					}
-					else
-					if (packet.getType() == ICMPPacket.TYPE_HOST_UNREACHABLE) {
-						// TODO: received non-ECHO_REPLY packets may also be useful, saying "destination is unreachable"
-						// packet body in this case is the sent ICMP_REQUEST packet
+					int count = receivingSocket.readBatch(batch);
+					if (count <= 0) continue;
+					long now = System.nanoTime();
+					// kernel timestamps are wall clock time, converted to the monotonic clock of send times
+					long wallClockOffset = wallClockNanos() - now;
+					for (int i = 0; i < count; i++) {
+						long timestamp = batch.getTimestampNanos(i);
+						handle(batch.packet(i), timestamp != 0 ? timestamp - wallClockOffset : now);
 					}
 				}
-				catch (InterruptedIOException e) {
-					// socket read timeout
-					log.debug("Receive timeout");
-					// TODO: make RawSocket to throw Exceptions without the stack trace (for speed)
-				}
-				catch (UnknownHostException e) {
-					log.warn("Cannot retrieve the source address of an ICMP packet", e);
-				}
 				catch (IOException e) {
 					log.warn("Unable to read from the socket", e);
 				}
-
 			}
 			while(!interrupted());
 
-      closeQuietly(receivingSocket);
+			closeQuietly(receivingSocket);
 			log.debug("Terminated");
 		}
+
+		private long wallClockNanos() {
+			Instant now = Instant.now();
+			return SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+		}
+
+		/**
+		 * @param receiveTime on the {@link System#nanoTime} clock
+		 */
+		private void handle(ByteBuffer packet, long receiveTime) {
+			ip.wrap(packet, 0);
+			int offset = ip.getIPHeaderByteLength();
+			if (packet.limit() < offset + ICMPEchoView.HEADER_LENGTH) return;
+			echo.wrap(packet, offset);
+			int type = echo.getType();
+
+			if (type == ICMPPacket.TYPE_ECHO_REPLY &&
+				echo.getIdentifier() == identifier &&
+				echo.getSequenceNumber() > 0 &&
+				echo.getICMPPacketByteLength() >= ICMPEchoView.HEADER_LENGTH + 8) {
+
+				PendingPing ping;
+				synchronized (results) {
+					ping = results.get(ip.getSourceAsWord());
+				}
+				if (ping == null) {
+					// most probably a late reply for an already completed ping
+					repliesDropped.incrementAndGet();
+					return;
+				}
+				repliesReceived.incrementAndGet();
+
+				// clock conversion errors may exceed the shortest round trips
+				long time = Math.max(0, receiveTime - echo.getDataLong(0));
+
+				int replyCount;
+				synchronized (ping.result) {
+					ping.result.addReplyNanos(time);
+					// TTL should be the same among all packets
+					ping.result.setTTL(ip.getTTL());
+					replyCount = ping.result.getReplyCount();
+					// the remaining echo requests are skipped by the sender once completed
+					if (ping.untilAlive) ping.result.limitPacketCount(Math.max(ping.sent, replyCount));
+				}
+				if (replyCount >= ping.count || ping.untilAlive) {
+					// all the replies are here, no need to wait any longer :-)
+					ping.complete();
+				}
+			}
+			else
+			if (type == ICMPPacket.TYPE_HOST_UNREACHABLE || type == ICMPPacket.TYPE_TIME_EXCEEDED) {
+				// the body is the IP header and the first 8 bytes of our echo request, which has caused the error
+				failFast(packet, offset + ICMPEchoView.HEADER_LENGTH);
+			}
+		}
+
+		/**
+		 * Completes the ping as dead right away, if the network has reported its destination as unreachable
+		 * and there are no replies yet.
+		 * @param offset of the embedded IP header of the original echo request
+		 */
+		private void failFast(ByteBuffer packet, int offset) {
+			ip.wrap(packet, offset);
+			if (offset + 20 > packet.limit() || ip.getProtocol() != IPPacket.PROTOCOL_ICMP) return;
+			echo.wrap(packet, offset + ip.getIPHeaderByteLength());
+			if (echo.getICMPPacketByteLength() < ICMPEchoView.HEADER_LENGTH ||
+				echo.getType() != ICMPPacket.TYPE_ECHO_REQUEST || echo.getIdentifier() != identifier) return;
+
+			PendingPing ping;
+			synchronized (results) {
+				ping = results.get(ip.getDestinationAsWord());
+			}
+			if (ping == null) return;
+			synchronized (ping.result) {
+				// some replies have arrived, so the host is there, e.g. a router on the way has just failed
+				if (ping.result.isAlive()) return;
+			}
+			unreachableReceived.incrementAndGet();
+			ping.complete();
+		}
 	}
 }
@@ -12,12 +12,22 @@ public class JavaPinger implements Pinger {
 
 	@Override
 	public PingResult ping(ScanningSubject subject, int count) throws IOException {
+		return ping(subject, count, false);
+	}
+
+	@Override
+	public PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
 		PingResult result = new PingResult(subject.getAddress(), count);
-		for (int i = 0; i < count; i++) {
+		for (int i = 0; i < count && subject.acquirePacket(); i++) {
 			try {
-				long t = System.currentTimeMillis();
-				if (subject.getAddress().isReachable(timeout))
-					result.addReply(System.currentTimeMillis() - t);
+				long t = System.nanoTime();
+				if (subject.getAddress().isReachable(timeout)) {
+					result.addReplyNanos(System.nanoTime() - t);
+					if (untilAlive) {
+						result.limitPacketCount(i + 1);
+						break;
+					}
+				}
 			}
 			catch (ConnectException e) {
 				// these happen on Mac
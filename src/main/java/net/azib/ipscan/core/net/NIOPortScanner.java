@@ -0,0 +1,285 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import static java.net.StandardSocketOptions.SO_LINGER;
+import static java.net.StandardSocketOptions.SO_RCVBUF;
+import static java.net.StandardSocketOptions.SO_REUSEADDR;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+
+/**
+ * NIOPortScanner - starts many non-blocking connects at once and
+ * collects their outcome with a single shared Selector thread.
+ * Scanning threads only block while waiting for free connect slots,
+ * so the number of host:port pairs in flight is limited by
+ * {@link ScannerConfig#maxPortConnects} rather than by the number of threads.
+ */
+@Log4j2
+public class NIOPortScanner implements PortScanner {
+
+	private final int maxConnectsPerHost;
+	/** limits the total number of connects in flight among all scanned hosts */
+	private final Semaphore connectPermits;
+	private final Selector selector;
+	/** connects started by scanning threads, waiting to be registered by the selector thread */
+	private final Queue<PortConnect> newConnects = new ConcurrentLinkedQueue<>();
+	private final Thread selectorThread;
+	private volatile boolean closed;
+
+	public NIOPortScanner(ScannerConfig scannerConfig) throws IOException {
+		this.maxConnectsPerHost = scannerConfig.maxPortConnectsPerHost;
+		this.connectPermits = new Semaphore(scannerConfig.maxPortConnects);
+		this.selector = Selector.open();
+		this.selectorThread = new SelectorThread();
+		this.selectorThread.start();
+	}
+
+	@Override
+	public void scanPorts(ScanningSubject subject, Iterator<Integer> ports, int timeout,
+	                      SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts) {
+		HostScan host = new HostScan(subject.getAddress(), openPorts, filteredPorts);
+		try {
+			while (ports.hasNext() && !closed && subject.acquirePacket()) {
+				int port = ports.next();
+				host.permits.acquire();
+				try {
+					connectPermits.acquire();
+				}
+				catch (InterruptedException e) {
+					host.permits.release();
+					throw e;
+				}
+				startConnect(host, port, timeout);
+			}
+			host.awaitCompletion();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// only does something if interrupted or closed before all the connects have finished
+			host.cancel();
+		}
+	}
+
+	private void startConnect(HostScan host, int port, int timeout) {
+		SocketChannel channel = null;
+		PortConnect connect;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(SO_REUSEADDR, true);
+			channel.setOption(SO_RCVBUF, 32);
+			// reset the connection on close, do not leave it in TIME_WAIT
+			channel.setOption(SO_LINGER, 0);
+			connect = host.add(channel, port, System.nanoTime() + MILLISECONDS.toNanos(timeout));
+		}
+		catch (IOException e) {
+			// most probably out of file descriptors
+			closeQuietly(channel);
+			host.permits.release();
+			connectPermits.release();
+			log.warn("Cannot open socket channel", e);
+			return;
+		}
+
+		try {
+			if (channel.connect(new InetSocketAddress(host.address, port)))
+				connect.finish(Outcome.OPEN);
+			else {
+				newConnects.add(connect);
+				selector.wakeup();
+			}
+		}
+		catch (IOException e) {
+			// connection refused or no route to host right away
+			connect.finish(Outcome.CLOSED);
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	enum Outcome {OPEN, FILTERED, CLOSED, CANCELLED}
+
+	/**
+	 * Holds connects in flight to a single host and their outcome
+	 */
+	private class HostScan {
+		private final InetAddress address;
+		private final SortedSet<Integer> openPorts;
+		private final SortedSet<Integer> filteredPorts;
+		private final List<PortConnect> connects = new ArrayList<>();
+		private final Semaphore permits = new Semaphore(maxConnectsPerHost);
+		private int numPending;
+
+		HostScan(InetAddress address, SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts) {
+			this.address = address;
+			this.openPorts = openPorts;
+			this.filteredPorts = filteredPorts;
+		}
+
+		synchronized PortConnect add(SocketChannel channel, int port, long deadline) {
+			PortConnect connect = new PortConnect(this, channel, port, deadline);
+			connects.add(connect);
+			numPending++;
+			return connect;
+		}
+
+		synchronized void finished(PortConnect connect, Outcome outcome) {
+			if (outcome == Outcome.OPEN) openPorts.add(connect.port);
+			else if (outcome == Outcome.FILTERED) filteredPorts.add(connect.port);
+			connects.remove(connect);
+			if (--numPending == 0) notifyAll();
+		}
+
+		synchronized void awaitCompletion() throws InterruptedException {
+			while (numPending > 0 && !closed)
+				wait(100);
+		}
+
+		void cancel() {
+			PortConnect[] pending;
+			synchronized (this) {
+				pending = connects.toArray(new PortConnect[0]);
+			}
+			for (PortConnect connect : pending) connect.finish(Outcome.CANCELLED);
+		}
+	}
+
+	/**
+	 * A single non-blocking connect in flight
+	 */
+	private class PortConnect {
+		private final HostScan host;
+		private final SocketChannel channel;
+		private final int port;
+		private final long deadline;
+		private boolean finished;
+
+		PortConnect(HostScan host, SocketChannel channel, int port, long deadline) {
+			this.host = host;
+			this.channel = channel;
+			this.port = port;
+			this.deadline = deadline;
+		}
+
+		void finish(Outcome outcome) {
+			synchronized (this) {
+				if (finished) return;
+				finished = true;
+			}
+			closeQuietly(channel);
+			host.finished(this, outcome);
+			host.permits.release();
+			connectPermits.release();
+		}
+
+		synchronized boolean isFinished() {
+			return finished;
+		}
+	}
+
+	/**
+	 * The only thread that waits for connects to complete
+	 */
+	private class SelectorThread extends Thread {
+		private final PriorityQueue<PortConnect> timeouts = new PriorityQueue<>(Comparator.comparingLong(c -> c.deadline));
+
+		SelectorThread() {
+			super("Port scanner selector");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					registerNewConnects();
+					selector.select(nextSelectTimeout());
+
+					for (SelectionKey key : selector.selectedKeys()) {
+						PortConnect connect = (PortConnect) key.attachment();
+						try {
+							if (connect.channel.finishConnect())
+								connect.finish(Outcome.OPEN);
+						}
+						catch (IOException e) {
+							// connection refused
+							connect.finish(Outcome.CLOSED);
+						}
+					}
+					selector.selectedKeys().clear();
+
+					expireTimeouts();
+				}
+			}
+			catch (IOException e) {
+				log.error("Port scanner selector failed", e);
+			}
+			finally {
+				// release all waiting scanning threads
+				closed = true;
+				for (PortConnect connect; (connect = newConnects.poll()) != null; ) connect.finish(Outcome.CANCELLED);
+				for (PortConnect connect : timeouts) connect.finish(Outcome.CANCELLED);
+				closeQuietly(selector);
+				log.debug("Terminated");
+			}
+		}
+
+		private void registerNewConnects() {
+			for (PortConnect connect; (connect = newConnects.poll()) != null; ) {
+				try {
+					connect.channel.register(selector, SelectionKey.OP_CONNECT, connect);
+					timeouts.add(connect);
+				}
+				catch (IOException e) {
+					// the channel was closed due to cancellation
+					connect.finish(Outcome.CANCELLED);
+				}
+			}
+		}
+
+		private long nextSelectTimeout() {
+			while (!timeouts.isEmpty() && timeouts.peek().isFinished()) timeouts.poll();
+			if (timeouts.isEmpty()) return 0; // wait for wakeup
+			long millis = NANOSECONDS.toMillis(timeouts.peek().deadline - System.nanoTime());
+			return Math.max(millis, 1);
+		}
+
+		private void expireTimeouts() {
+			long now = System.nanoTime();
+			while (!timeouts.isEmpty() && timeouts.peek().deadline - now <= 0) {
+				// no response in time - the port is filtered
+				timeouts.poll().finish(Outcome.FILTERED);
+			}
+		}
+	}
+}
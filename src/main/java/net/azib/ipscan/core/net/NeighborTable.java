@@ -0,0 +1,267 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.Inet4Address;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.util.IntObjectMap;
+
+/**
+ * IPv4 neighbor (ARP) table of the OS, shared by all the scanning threads.
+ * The table is read from /proc/net/arp on Linux, or from the output of a single "arp -an" elsewhere,
+ * and is reloaded lazily, at most once per the refresh interval, only when a missing address may have been added
+ * after the last load: hosts that have just replied on a directly attached network.
+ * Other misses, e.g. dead or routed hosts, which are never in the table, are answered from the loaded entries.
+ */
+@Log4j2
+public class NeighborTable {
+	private static final Path PROC_NET_ARP = Path.of("/proc/net/arp");
+	/** ATF_COM flag of /proc/net/arp: the entry is complete */
+	private static final int ATF_COM = 0x2;
+	private static final long ARP_TIMEOUT_MS = 5000;
+
+	private final long refreshIntervalNanos;
+	/** refreshes are serialized with a lock, because waiting for a monitor would pin virtual threads */
+	private final ReentrantLock refreshLock = new ReentrantLock();
+	/** IPv4 addresses as 32-bit words to MACs, replaced as a whole on refresh */
+	private volatile IntObjectMap<String> entries = new IntObjectMap<>();
+	private volatile long lastRefreshTime;
+	private volatile boolean loaded;
+	private volatile boolean available = true;
+	/** IPv4 networks of the local interfaces as {address, mask} pairs, null if unknown */
+	private volatile int[][] localNetworks;
+
+	public NeighborTable(int refreshIntervalMillis) {
+		this.refreshIntervalNanos = MILLISECONDS.toNanos(refreshIntervalMillis);
+	}
+
+	/**
+	 * Forgets the loaded entries, so that the table is reloaded on the next lookup.
+	 */
+	public void reset() {
+		refreshLock.lock();
+		try {
+			entries = new IntObjectMap<>();
+			loaded = false;
+			available = true;
+			localNetworks = findLocalNetworks();
+		}
+		finally {
+			refreshLock.unlock();
+		}
+	}
+
+	/**
+	 * @return false if the table can't be read on this system
+	 */
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * Looks up the MAC, reloading the table if the address was possibly added after the last load.
+	 * @param address IPv4 address as a 32-bit word
+	 * @param replied whether the host has just replied to a ping, so its entry may be newer than the last load
+	 * @return the MAC address, like 00:1A:2B:3C:4D:5E, or null if the address is not in the table
+	 */
+	public String getMAC(int address, boolean replied) throws InterruptedException {
+		long requestTime = System.nanoTime();
+		String mac = entries.get(address);
+		if (mac == null && available && (!loaded || replied && isOnLink(address))) {
+			// entries of addresses pinged just before the request are only visible after a newer load
+			refreshAfter(requestTime);
+			mac = entries.get(address);
+		}
+		return mac;
+	}
+
+	/**
+	 * @return false if the address is surely behind a router, so it never appears in the table
+	 */
+	private boolean isOnLink(int address) {
+		int[][] networks = localNetworks;
+		if (networks == null) return true;
+		for (int[] network : networks) {
+			if ((address & network[1]) == network[0]) return true;
+		}
+		return false;
+	}
+
+	private static int[][] findLocalNetworks() {
+		List<int[]> networks = new ArrayList<>();
+		try {
+			for (NetworkInterface netif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+				if (!netif.isUp() || netif.isLoopback()) continue;
+				for (InterfaceAddress interfaceAddress : netif.getInterfaceAddresses()) {
+					int prefixLength = interfaceAddress.getNetworkPrefixLength();
+					if (!(interfaceAddress.getAddress() instanceof Inet4Address) || prefixLength <= 0 || prefixLength > 32) continue;
+					int mask = -1 << (32 - prefixLength);
+					networks.add(new int[] {ByteBuffer.wrap(interfaceAddress.getAddress().getAddress()).getInt() & mask, mask});
+				}
+			}
+		}
+		catch (SocketException e) {
+			log.info("Unable to list local networks, all the addresses are treated as neighbors: " + e);
+			return null;
+		}
+		return networks.toArray(new int[0][]);
+	}
+
+	private void refreshAfter(long requestTime) throws InterruptedException {
+		refreshLock.lockInterruptibly();
+		try {
+			// another thread has already loaded the table in the meantime
+			if (loaded && lastRefreshTime - requestTime >= 0) return;
+
+			long delay = lastRefreshTime + refreshIntervalNanos - System.nanoTime();
+			if (loaded && delay > 0) NANOSECONDS.sleep(delay);
+
+			lastRefreshTime = System.nanoTime();
+			try {
+				entries = load();
+				loaded = true;
+			}
+			catch (IOException e) {
+				log.warn("Unable to read the neighbor table, falling back to per-address lookups", e);
+				available = false;
+			}
+		}
+		finally {
+			refreshLock.unlock();
+		}
+	}
+
+	private static IntObjectMap<String> load() throws IOException {
+		IntObjectMap<String> entries = new IntObjectMap<>();
+		if (Files.isReadable(PROC_NET_ARP)) {
+			try (BufferedReader reader = Files.newBufferedReader(PROC_NET_ARP)) {
+				parseProcNetArp(reader, entries);
+			}
+		}
+		else {
+			Process process = new ProcessBuilder("arp", "-an").redirectErrorStream(true).start();
+			try {
+				// a hanging process is killed, which also ends the reading of its output
+				CompletableFuture.delayedExecutor(ARP_TIMEOUT_MS, MILLISECONDS).execute(process::destroyForcibly);
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+					parseArpOutput(reader, entries);
+				}
+				if (!process.waitFor(ARP_TIMEOUT_MS, MILLISECONDS))
+					throw new IOException("arp has not finished in " + ARP_TIMEOUT_MS + " ms");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for arp");
+			}
+			finally {
+				process.destroy();
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Parses lines like "192.168.0.1  0x1  0x2  00:1a:2b:3c:4d:5e  *  eth0" after the header
+	 */
+	static void parseProcNetArp(BufferedReader reader, IntObjectMap<String> entries) throws IOException {
+		String line = reader.readLine();
+		while ((line = reader.readLine()) != null) {
+			String[] columns = line.trim().split("\\s+");
+			if (columns.length < 4) continue;
+			try {
+				if ((Integer.decode(columns[2]) & ATF_COM) == 0) continue;
+			}
+			catch (NumberFormatException e) {
+				continue;
+			}
+			put(entries, columns[0], columns[3]);
+		}
+	}
+
+	/**
+	 * Parses BSD-style lines like "? (192.168.0.1) at 0:1a:2b:3c:4d:5e on en0 ifscope [ethernet]"
+	 */
+	static void parseArpOutput(BufferedReader reader, IntObjectMap<String> entries) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int start = line.indexOf('(');
+			int end = line.indexOf(')', start + 1);
+			int at = line.indexOf(" at ", end + 1);
+			if (start < 0 || end < 0 || at < 0) continue;
+			int macEnd = line.indexOf(' ', at + 4);
+			put(entries, line.substring(start + 1, end), line.substring(at + 4, macEnd < 0 ? line.length() : macEnd));
+		}
+	}
+
+	private static void put(IntObjectMap<String> entries, String ip, String mac) {
+		int address = parseIPv4(ip);
+		String normalizedMAC = normalizeMAC(mac);
+		if (address != 0 && normalizedMAC != null) entries.put(address, normalizedMAC);
+	}
+
+	/**
+	 * @return the address as a 32-bit word, or 0 if it is not a dotted IPv4 address
+	 */
+	static int parseIPv4(String ip) {
+		String[] octets = ip.split("\\.");
+		if (octets.length != 4) return 0;
+		int address = 0;
+		try {
+			for (String octet : octets) {
+				int value = Integer.parseInt(octet);
+				if (value < 0 || value > 255) return 0;
+				address = address << 8 | value;
+			}
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+		return address;
+	}
+
+	/**
+	 * @return the MAC in upper case with leading zeroes, e.g. 0:1a:2b:3c:4d:5e becomes 00:1A:2B:3C:4D:5E,
+	 * or null if it is not a complete non-zero MAC
+	 */
+	static String normalizeMAC(String mac) {
+		String[] octets = mac.split("[:-]");
+		if (octets.length != 6) return null;
+		StringBuilder result = new StringBuilder(17);
+		boolean isZero = true;
+		try {
+			for (String octet : octets) {
+				int value = Integer.parseInt(octet, 16);
+				if (octet.length() > 2 || value < 0) return null;
+				if (value != 0) isZero = false;
+				if (!result.isEmpty()) result.append(':');
+				result.append(Character.toUpperCase(Character.forDigit(value >> 4, 16)));
+				result.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+			}
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+		return isZero ? null : result.toString();
+	}
+}
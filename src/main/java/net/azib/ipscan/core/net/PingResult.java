@@ -5,20 +5,33 @@
  */
 package net.azib.ipscan.core.net;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import java.net.InetAddress;
 import lombok.Getter;
 
 /**
- * The result of pinging
+ * The result of pinging.
+ * Round trip times are kept in nanoseconds as running statistics (Welford's algorithm for the deviation,
+ * RFC 3550 for jitter), so no samples are stored.
  *
  * @author Anton Keks
  */
 public class PingResult {
 	InetAddress address;
 
+	/** a timeout for the host would exceed the mean round trip time by this many deviations, like TCP's RTO in RFC 6298 */
+	private static final int TIMEOUT_DEVIATIONS = 4;
+
 	private int ttl;
-	private long totalTime;
+	private long shortestTime = Long.MAX_VALUE;
 	private long longestTime;
+	private double meanTime;
+	/** sum of squared differences from the mean */
+	private double squaredDeviations;
+	private long lastTime;
+	private double jitter;
 	@Getter private int packetCount;
 	@Getter private int replyCount;
 	@Getter private boolean timeoutAdaptationAllowed;
@@ -28,11 +41,29 @@ public class PingResult {
 		this.packetCount = packetCount;
 	}
 
+	/**
+	 * @param time round trip time, ms, for pingers that don't measure anything finer
+	 */
 	public void addReply(long time) {
+		addReplyNanos(MILLISECONDS.toNanos(time));
+	}
+
+	/**
+	 * @param time round trip time, ns
+	 */
+	public void addReplyNanos(long time) {
 		replyCount++;
+		if (time < shortestTime)
+			shortestTime = time;
 		if (time > longestTime)
 			longestTime = time;
-		totalTime += time;
+		double delta = time - meanTime;
+		meanTime += delta / replyCount;
+		squaredDeviations += delta * (time - meanTime);
+		// smoothed difference of consecutive round trip times, see RFC 3550
+		if (replyCount > 1)
+			jitter += (Math.abs(time - lastTime) - jitter) / 16;
+		lastTime = time;
 		// this is for ports fetcher, etc
 		timeoutAdaptationAllowed = replyCount > 2;
 	}
@@ -45,12 +76,64 @@ public class PingResult {
 		this.ttl = ttl;
 	}
 
+	/**
+	 * @return average round trip time, ms
+	 */
 	public int getAverageTime() {
-		return (int)(totalTime / replyCount);
+		return (int) MILLISECONDS.convert(Math.round(meanTime), NANOSECONDS);
 	}
 
+	/**
+	 * @return the longest round trip time, rounded up to whole ms, so that it is usable as a timeout
+	 */
 	public int getLongestTime() {
-		return (int)longestTime;
+		return (int) ceilMillis(longestTime);
+	}
+
+	public long getShortestTimeNanos() {
+		return isAlive() ? shortestTime : 0;
+	}
+
+	public long getLongestTimeNanos() {
+		return longestTime;
+	}
+
+	public long getAverageTimeNanos() {
+		return Math.round(meanTime);
+	}
+
+	/**
+	 * @return standard deviation of round trip times, ns
+	 */
+	public long getTimeDeviationNanos() {
+		return Math.round(getTimeDeviation());
+	}
+
+	/**
+	 * @return smoothed difference of consecutive round trip times, ns
+	 */
+	public long getJitterNanos() {
+		return Math.round(jitter);
+	}
+
+	private double getTimeDeviation() {
+		return replyCount > 1 ? Math.sqrt(squaredDeviations / (replyCount - 1)) : 0;
+	}
+
+	/**
+	 * @param meanTimeFactor the timeout is no less than the mean round trip time multiplied by this,
+	 * which matters only for hosts with steady round trip times
+	 * @return a timeout that replies of the host are unlikely to exceed: the mean plus a few deviations
+	 * (or jitters, whichever is bigger), ms
+	 */
+	public int getAdaptedTimeout(int meanTimeFactor) {
+		double variation = Math.max(getTimeDeviation(), jitter);
+		double timeout = Math.max(meanTime + TIMEOUT_DEVIATIONS * variation, meanTime * meanTimeFactor);
+		return (int) ceilMillis((long) Math.ceil(timeout));
+	}
+
+	private static long ceilMillis(long nanos) {
+		return (nanos + MILLISECONDS.toNanos(1) - 1) / MILLISECONDS.toNanos(1);
 	}
 
 	public int getPacketLoss() {
@@ -76,9 +159,10 @@ public class PingResult {
 			timeoutAdaptationAllowed = true;
 	}
 
-	PingResult merge(PingResult result) {
-		this.packetCount += result.packetCount;
-		this.replyCount += result.replyCount;
-		return this;
+	/**
+	 * Pinging in liveness mode stops early, only the pings actually sent are counted
+	 */
+	void limitPacketCount(int sent) {
+		if (sent < packetCount) packetCount = sent;
 	}
 }
@@ -9,6 +9,7 @@ import net.azib.ipscan.core.ScanningSubject;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Pinger
@@ -24,4 +25,33 @@ public interface Pinger extends Closeable {
 	 */
 	PingResult ping(ScanningSubject subject, int count) throws IOException;
 
+	/**
+	 * Liveness mode: if untilAlive is true, pinging stops at the first reply,
+	 * and the packet count of the result is the number of pings actually sent.
+	 * By default, all the pings are issued anyway.
+	 */
+	default PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
+		return ping(subject, count);
+	}
+
+	/**
+	 * Issues the specified number of pings without waiting for replies, if the implementation supports it.
+	 * By default, the pings are performed synchronously.
+	 */
+	default CompletableFuture<PingResult> pingAsync(ScanningSubject subject, int count) {
+		return pingAsync(subject, count, false);
+	}
+
+	/**
+	 * Asynchronous variant of the liveness mode, see {@link #ping(ScanningSubject, int, boolean)}
+	 */
+	default CompletableFuture<PingResult> pingAsync(ScanningSubject subject, int count, boolean untilAlive) {
+		try {
+			return CompletableFuture.completedFuture(ping(subject, count, untilAlive));
+		}
+		catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
 }
@@ -58,8 +58,14 @@ public class PingerRegistry {
 		Class<? extends Pinger> pingerClass = pingers.get(pingerName);
 		Constructor<? extends Pinger> constructor;
 		try {
-			constructor = pingerClass.getConstructor(int.class);
-			return constructor.newInstance(timeout);
+			try {
+				constructor = pingerClass.getConstructor(int.class, ScannerConfig.class);
+				return constructor.newInstance(timeout, scannerConfig);
+			}
+			catch (NoSuchMethodException e) {
+				constructor = pingerClass.getConstructor(int.class);
+				return constructor.newInstance(timeout);
+			}
 		}
 		catch (Exception e) {
 			Throwable t = e instanceof InvocationTargetException ? e.getCause() : e;
@@ -0,0 +1,42 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.SortedSet;
+import net.azib.ipscan.core.ScanningSubject;
+
+/**
+ * PortScanner - the engine used by PortsFetcher to probe TCP ports.
+ */
+public interface PortScanner extends Closeable {
+
+	/**
+	 * Probes all the provided ports of the subject.
+	 * Ports that accept the connection are added to openPorts,
+	 * ports that didn't respond in time are added to filteredPorts,
+	 * refused (closed) ports are not reported.
+	 * Returns early if the current thread is interrupted.
+	 *
+	 * @param timeout connection timeout for a single port
+	 */
+	void scanPorts(ScanningSubject subject, Iterator<Integer> ports, int timeout,
+	               SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts);
+
+	/**
+	 * Releases resources bound to the thread, interrupting its scan in progress
+	 */
+	default void interrupt(Thread thread) {
+	}
+
+	/**
+	 * Releases resources of this scanner, interrupting any scans in progress.
+	 * May be called more than once.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,71 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.fetchers.FetcherException;
+import org.apache.commons.lang3.SystemUtils;
+
+/**
+ * PortScannerRegistry - knows all available PortScanner engines.
+ */
+@Log4j2
+public class PortScannerRegistry {
+	private final ScannerConfig scannerConfig;
+
+	/** All available PortScanner implementations */
+	Map<String, Class<? extends PortScanner>> portScanners;
+
+	public PortScannerRegistry(ScannerConfig scannerConfig) {
+		this.scannerConfig = scannerConfig;
+		portScanners = new LinkedHashMap<>();
+		portScanners.put("portscanner.connect", ConnectPortScanner.class);
+		portScanners.put("portscanner.nio", NIOPortScanner.class);
+		if (SystemUtils.IS_OS_LINUX)
+			portScanners.put("portscanner.syn", SYNPortScanner.class);
+	}
+
+	/**
+	 * Creates the configured port scanner.
+	 * Falls back to the connect() scanner if raw sockets are not available for the SYN scanner.
+	 */
+	public PortScanner createPortScanner() throws FetcherException {
+		try {
+			return createPortScanner(scannerConfig.selectedPortScanner);
+		}
+		catch (RuntimeException e) {
+			if (!scannerConfig.selectedPortScanner.equals("portscanner.syn"))
+				throw e;
+			log.info("SYN port scanner failed, falling back to connect(): " + e);
+			return createPortScanner("portscanner.connect");
+		}
+	}
+
+	/**
+	 * Creates a specified port scanner
+	 */
+	PortScanner createPortScanner(String portScannerName) throws FetcherException {
+		Class<? extends PortScanner> portScannerClass = portScanners.get(portScannerName);
+		if (portScannerClass == null)
+			throw new FetcherException("portScannerCreateFailure");
+		try {
+			Constructor<? extends PortScanner> constructor = portScannerClass.getConstructor(ScannerConfig.class);
+			return constructor.newInstance(scannerConfig);
+		}
+		catch (Exception e) {
+			Throwable t = e instanceof InvocationTargetException ? e.getCause() : e;
+			log.error("Unable to create port scanner: " + portScannerName, t);
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			throw new FetcherException("portScannerCreateFailure");
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.net.StandardSocketOptions.SO_LINGER;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.core.ScanningSubject;
+
+/**
+ * Races UDP and TCP probes to a host over non-blocking channels.
+ * All the probes of a ping are started at once and the first positive signal wins: ICMP port unreachable,
+ * any UDP response, RST or an established connection. The remaining probes are cancelled then,
+ * and only the winning probe is used for the following pings. A dead host costs a single timeout.
+ */
+@Log4j2
+class ProbeRace {
+	/** the probe id of UDP, TCP probes are identified by their ports */
+	static final int UDP = -1;
+	private static final int NONE = -2;
+	private static final int HOST_DOWN = -3;
+	/** adapted timeouts are never shorter, sub-ms round trips on LANs are easily exceeded by scheduling delays */
+	private static final int MIN_ADAPTED_TIMEOUT = 50;
+
+	private final int timeout;
+	private final boolean useUDP;
+	private final int[] tcpPorts;
+
+	/**
+	 * @param useUDP whether to send a UDP probe to {@link UDPPinger#PROBE_UDP_PORT}
+	 * @param tcpPorts ports to connect to at once
+	 */
+	ProbeRace(int timeout, boolean useUDP, int[] tcpPorts) {
+		this.timeout = timeout;
+		this.useUDP = useUDP;
+		this.tcpPorts = tcpPorts;
+	}
+
+	PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
+		PingResult result = new PingResult(subject.getAddress(), count);
+		List<Integer> probes = new ArrayList<>();
+		if (useUDP) probes.add(UDP);
+		// the requested port is the most likely one to be open
+		if (subject.isAnyPortRequested()) probes.add(subject.requestedPortsIterator().next());
+		for (int port : tcpPorts) if (!probes.contains(port)) probes.add(port);
+
+		try (Selector selector = Selector.open()) {
+			for (int i = 0; i < count && !Thread.currentThread().isInterrupted(); i++) {
+				int timeout = result.isTimeoutAdaptationAllowed() ? min(max(result.getAdaptedTimeout(2), MIN_ADAPTED_TIMEOUT), this.timeout) : this.timeout;
+				long startTime = System.nanoTime();
+				int winner = race(selector, subject, probes, startTime + MILLISECONDS.toNanos(timeout));
+				if (winner == HOST_DOWN) break;
+				if (winner == NONE) continue;
+
+				result.addReplyNanos(System.nanoTime() - startTime);
+				// one connection is enough for TCP, like in TCPPinger
+				if (winner != UDP) result.enableTimeoutAdaptation();
+				if (untilAlive) {
+					result.limitPacketCount(i + 1);
+					break;
+				}
+				probes = List.of(winner);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the winning probe, {@link #NONE} on timeout or {@link #HOST_DOWN}
+	 */
+	private int race(Selector selector, ScanningSubject subject, List<Integer> probes, long deadline) throws IOException {
+		InetAddress address = subject.getAddress();
+		List<SelectableChannel> channels = new ArrayList<>(probes.size());
+		try {
+			for (int probe : probes) {
+				if (!subject.acquirePacket()) return NONE;
+				try {
+					if (probe == UDP) {
+						DatagramChannel channel = DatagramChannel.open();
+						channels.add(channel);
+						channel.configureBlocking(false);
+						channel.connect(new InetSocketAddress(address, UDPPinger.PROBE_UDP_PORT));
+						channel.write(ByteBuffer.allocate(8).putLong(0, System.currentTimeMillis()));
+						channel.register(selector, SelectionKey.OP_READ, probe);
+					}
+					else {
+						SocketChannel channel = SocketChannel.open();
+						channels.add(channel);
+						channel.configureBlocking(false);
+						// reset the connection on close, do not leave it in TIME_WAIT
+						channel.setOption(SO_LINGER, 0);
+						if (channel.connect(new InetSocketAddress(address, probe))) return probe;
+						channel.register(selector, SelectionKey.OP_CONNECT, probe);
+					}
+				}
+				catch (IOException e) {
+					int outcome = outcome(probe, e, subject);
+					if (outcome != NONE) return outcome;
+				}
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(64);
+			long remaining;
+			while (!selector.keys().isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+				selector.select(Math.max(1, NANOSECONDS.toMillis(remaining)));
+				if (Thread.currentThread().isInterrupted()) return NONE;
+				for (SelectionKey key : selector.selectedKeys()) {
+					int probe = (Integer) key.attachment();
+					try {
+						if (probe == UDP) ((DatagramChannel) key.channel()).read(buffer.clear());
+						else ((SocketChannel) key.channel()).finishConnect();
+						return probe;
+					}
+					catch (IOException e) {
+						key.cancel();
+						int outcome = outcome(probe, e, subject);
+						if (outcome != NONE) return outcome;
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+			return NONE;
+		}
+		finally {
+			selector.selectedKeys().clear();
+			for (SelectableChannel channel : channels) closeQuietly(channel);
+			// deregisters the closed channels
+			selector.selectNow();
+		}
+	}
+
+	/**
+	 * @return the probe itself if the error means that the host is alive, {@link #HOST_DOWN} or {@link #NONE}
+	 */
+	private static int outcome(int probe, IOException e, ScanningSubject subject) {
+		String msg = String.valueOf(e.getMessage());
+		// ICMP port unreachable to UDP or RST to TCP: the host is alive
+		if (e instanceof PortUnreachableException || msg.contains(/*Connection*/"refused"))
+			return probe;
+		// not all Java implementations throw NoRouteToHostException, see TCPPinger
+		if (e instanceof NoRouteToHostException || msg.contains(/*No*/"route to host") || msg.contains(/*Host is*/"down") || msg.contains(/*Network*/"unreachable"))
+			return HOST_DOWN;
+		log.debug(subject.toString(), e);
+		return NONE;
+	}
+}
@@ -0,0 +1,285 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.core.net;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.savarese.rocksaw.net.RawSocket.closeQuietly;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+import org.savarese.rocksaw.net.PacketBatch;
+import org.savarese.rocksaw.net.RawSocket;
+import org.savarese.vserv.tcpip.IPPacket;
+import org.savarese.vserv.tcpip.IPView;
+import org.savarese.vserv.tcpip.OctetConverter;
+import org.savarese.vserv.tcpip.TCPPacket;
+import org.savarese.vserv.tcpip.TCPView;
+
+/**
+ * SYNPortScanner - half-open port scanner.
+ * Sends SYN packets over a single shared raw socket and matches
+ * SYN-ACK (open) and RST (closed) replies on a receiver thread,
+ * so no connection is ever established by the local TCP stack.
+ * Requires raw socket privileges, IPv6 addresses are scanned with connect().
+ */
+@Log4j2
+public class SYNPortScanner implements PortScanner {
+	private static final int IP_HEADER_LENGTH = 5;
+	private static final int TCP_HEADER_LENGTH = 5;
+	private static final int SYN_PACKET_LENGTH = (IP_HEADER_LENGTH + TCP_HEADER_LENGTH) * 4;
+	private static final int SYN_WINDOW_SIZE = 1024;
+	/** max packets received with a single system call */
+	private static final int BATCH_SIZE = 64;
+
+	/** a single raw socket for sending of all SYN packets */
+	private final RawSocket sendingSocket;
+	/** a single raw socket for receiving of all TCP packets */
+	private final RawSocket receivingSocket;
+	/** reserves the source port, so that the local stack resets connections instead of other sockets receiving them */
+	private final Socket sourcePortHolder;
+	private final int sourcePort;
+	/** mixed into sequence numbers in order to recognize replies to our own SYN packets */
+	private final int sequenceSecret = ThreadLocalRandom.current().nextInt();
+	/** hosts being scanned, keys are IPv4 addresses as 32-bit words */
+	private final Map<Integer, HostScan> hosts = new ConcurrentHashMap<>();
+	private final int maxProbesPerHost;
+	private final PortScanner connectScanner;
+	private final Thread receiverThread;
+
+	public SYNPortScanner(ScannerConfig scannerConfig) throws IOException {
+		sendingSocket = new RawSocket();
+		sendingSocket.open(RawSocket.PF_INET, IPPacket.PROTOCOL_TCP);
+		receivingSocket = new RawSocket();
+		try {
+			receivingSocket.open(RawSocket.PF_INET, IPPacket.PROTOCOL_TCP);
+			receivingSocket.setReceiveTimeout(1000);
+		}
+		catch (IOException e) {
+			closeQuietly(sendingSocket);
+			closeQuietly(receivingSocket);
+			throw e;
+		}
+
+		sourcePortHolder = new Socket();
+		sourcePortHolder.bind(new InetSocketAddress(0));
+		sourcePort = sourcePortHolder.getLocalPort();
+
+		maxProbesPerHost = scannerConfig.maxPortConnectsPerHost;
+		connectScanner = new ConnectPortScanner(scannerConfig);
+
+		receiverThread = new PacketReceiverThread();
+		receiverThread.start();
+	}
+
+	@Override
+	public void scanPorts(ScanningSubject subject, Iterator<Integer> ports, int timeout,
+	                      SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts) {
+		if (!(subject.getAddress() instanceof Inet4Address)) {
+			connectScanner.scanPorts(subject, ports, timeout, openPorts, filteredPorts);
+			return;
+		}
+
+		int address = OctetConverter.octetsToInt(subject.getAddress().getAddress());
+		HostScan host = new HostScan(openPorts, filteredPorts);
+		hosts.put(address, host);
+		try {
+			byte[] data = new byte[SYN_PACKET_LENGTH];
+			TCPPacket packet = createSYNPacket(data, sourceAddressFor(subject.getAddress()), address);
+			packet.computeTCPChecksum();
+			// only the port and the sequence number change, so the checksum is updated incrementally
+			TCPView tcp = new TCPView();
+			tcp.wrap(ByteBuffer.wrap(data), packet.getIPHeaderByteLength());
+			long timeoutNanos = MILLISECONDS.toNanos(timeout);
+
+			while (ports.hasNext() && !Thread.currentThread().isInterrupted()) {
+				host.awaitPendingBelow(maxProbesPerHost);
+				if (!subject.acquirePacket()) break;
+				int port = ports.next();
+				tcp.setDestinationPort(port);
+				tcp.setSequenceNumber(sequenceFor(address, port));
+				host.sent(port, System.nanoTime() + timeoutNanos);
+				synchronized (sendingSocket) {
+					// the kernel adds the IP header itself
+					sendingSocket.write(subject.getAddress(), data, packet.getIPHeaderByteLength(), packet.getTCPPacketByteLength());
+				}
+			}
+			// everything that hasn't replied in time is filtered
+			host.awaitPendingBelow(1);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			log.warn("Cannot send SYN packets to " + subject, e);
+		}
+		finally {
+			hosts.remove(address);
+		}
+	}
+
+	private TCPPacket createSYNPacket(byte[] data, int sourceAddress, int destinationAddress) {
+		TCPPacket packet = new TCPPacket(1);
+		packet.setData(data);
+		packet.setIPVersion(4);
+		packet.setIPHeaderLength(IP_HEADER_LENGTH);
+		packet.setProtocol(IPPacket.PROTOCOL_TCP);
+		packet.setSourceAsWord(sourceAddress);
+		packet.setDestinationAsWord(destinationAddress);
+		packet.setTCPHeaderLength(TCP_HEADER_LENGTH);
+		packet.setTCPDataByteLength(0);
+		packet.setSourcePort(sourcePort);
+		packet.setControlFlags(TCPPacket.MASK_SYN);
+		packet.setWindowSize(SYN_WINDOW_SIZE);
+		return packet;
+	}
+
+	/**
+	 * @return the local address the kernel will use for sending packets to the specified address,
+	 * it is needed for computation of TCP checksums
+	 */
+	private static int sourceAddressFor(InetAddress address) throws SocketException {
+		try (DatagramSocket socket = new DatagramSocket()) {
+			// connecting a datagram socket doesn't send anything, just selects the route
+			socket.connect(address, 9);
+			return OctetConverter.octetsToInt(socket.getLocalAddress().getAddress());
+		}
+	}
+
+	private int sequenceFor(int address, int port) {
+		return sequenceSecret ^ (address * 65599 + port);
+	}
+
+	@Override
+	public void close() {
+		synchronized (sendingSocket) {
+			closeQuietly(sendingSocket);
+		}
+		receiverThread.interrupt();
+		connectScanner.close();
+		try {
+			sourcePortHolder.close();
+		}
+		catch (IOException ignore) {
+		}
+	}
+
+	/**
+	 * Ports of a single host, which have been probed, but haven't replied yet
+	 */
+	private static class HostScan {
+		private final SortedSet<Integer> openPorts;
+		private final SortedSet<Integer> filteredPorts;
+		/** pending ports with their reply deadlines, in order of sending */
+		private final LinkedHashMap<Integer, Long> pending = new LinkedHashMap<>();
+
+		HostScan(SortedSet<Integer> openPorts, SortedSet<Integer> filteredPorts) {
+			this.openPorts = openPorts;
+			this.filteredPorts = filteredPorts;
+		}
+
+		synchronized void sent(int port, long deadline) {
+			pending.put(port, deadline);
+		}
+
+		synchronized void replied(int port, boolean isOpen) {
+			// late or duplicate replies are ignored
+			if (pending.remove(port) == null) return;
+			if (isOpen) openPorts.add(port);
+			notifyAll();
+		}
+
+		/**
+		 * Waits until less than the specified number of ports are pending,
+		 * ports that don't reply before their deadline are considered filtered.
+		 */
+		synchronized void awaitPendingBelow(int count) throws InterruptedException {
+			while (pending.size() >= count) {
+				Map.Entry<Integer, Long> oldest = pending.entrySet().iterator().next();
+				long waitMillis = NANOSECONDS.toMillis(oldest.getValue() - System.nanoTime());
+				if (waitMillis > 0)
+					wait(waitMillis);
+				else {
+					pending.remove(oldest.getKey());
+					filteredPorts.add(oldest.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * An internal thread for receiving of SYN-ACK and RST packets
+	 */
+	private class PacketReceiverThread extends Thread {
+		private final IPView ip = new IPView();
+		private final TCPView tcp = new TCPView();
+
+		public PacketReceiverThread() {
+			super("SYN packet receiver");
+			setDaemon(true);
+			setPriority(Thread.MAX_PRIORITY);
+		}
+
+		public void run() {
+			// only the headers are needed, the rest of the packets is truncated
+			PacketBatch batch = new PacketBatch(BATCH_SIZE, 128);
+
+			do {
+				try {
+					// all the packets that are queued are read at once
+					int count = receivingSocket.readBatch(batch);
+					for (int i = 0; i < count; i++) handle(batch.packet(i));
+				}
+				catch (IOException e) {
+					log.warn("Unable to read from the socket", e);
+				}
+			}
+			while (!interrupted());
+			closeQuietly(receivingSocket);
+			log.debug("Terminated");
+		}
+
+		private void handle(ByteBuffer packet) {
+			ip.wrap(packet, 0);
+			// IP header length differs from packet to packet
+			int offset = ip.getIPHeaderByteLength();
+			if (packet.limit() < offset + 20 || ip.getProtocol() != IPPacket.PROTOCOL_TCP)
+				return;
+			tcp.wrap(packet, offset);
+			if (tcp.getDestinationPort() != sourcePort)
+				return;
+
+			int address = ip.getSourceAsWord();
+			HostScan host = hosts.get(address);
+			if (host == null)
+				return;
+
+			int port = tcp.getSourcePort();
+			if ((int) tcp.getAckNumber() != sequenceFor(address, port) + 1)
+				return;
+
+			if (tcp.isSet(TCPPacket.MASK_SYN | TCPPacket.MASK_ACK))
+				host.replied(port, true);
+			else if (tcp.isSet(TCPPacket.MASK_RST))
+				host.replied(port, false);
+		}
+	}
+}
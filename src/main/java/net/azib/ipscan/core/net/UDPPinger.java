@@ -28,11 +28,16 @@ import net.azib.ipscan.core.ScanningSubject;
 @RequiredArgsConstructor
 public class UDPPinger implements Pinger {
 
-	private static final int PROBE_UDP_PORT = 37381;
+	static final int PROBE_UDP_PORT = 37381;
 
 	private final int timeout;
 
 	public PingResult ping(ScanningSubject subject, int count) throws IOException {
+		return ping(subject, count, false);
+	}
+
+	@Override
+	public PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
 		PingResult result = new PingResult(subject.getAddress(), count);
 
 		DatagramSocket socket = null;
@@ -41,9 +46,9 @@ public class UDPPinger implements Pinger {
 			socket.setSoTimeout(timeout);
 			socket.connect(subject.getAddress(), PROBE_UDP_PORT);
 
-			for (int i = 0; i < count && !Thread.currentThread().isInterrupted(); i++) {
+			for (int i = 0; i < count && subject.acquirePacket(); i++) {
 				byte[] payload = new byte[8];
-				long startTime = System.currentTimeMillis();
+				long startTime = System.nanoTime();
 				ByteBuffer.wrap(payload).putLong(startTime);
 				DatagramPacket packet = new DatagramPacket(payload, payload.length);
 				try {
@@ -51,7 +56,11 @@ public class UDPPinger implements Pinger {
 					socket.receive(packet);
 				}
 				catch (PortUnreachableException e) {
-					result.addReply(System.currentTimeMillis() - startTime);
+					result.addReplyNanos(System.nanoTime() - startTime);
+					if (untilAlive) {
+						result.limitPacketCount(i + 1);
+						break;
+					}
 				}
 				catch (SocketTimeoutException ignore) {
 				}
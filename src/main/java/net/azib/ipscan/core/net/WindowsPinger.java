@@ -5,7 +5,6 @@
  */
 package net.azib.ipscan.core.net;
 
-import static java.lang.Thread.currentThread;
 import static net.azib.ipscan.core.net.WinIpHlp.toIp6Addr;
 import static net.azib.ipscan.core.net.WinIpHlp.toIpAddr;
 import static net.azib.ipscan.core.net.WinIpHlpDll.dll;
@@ -37,13 +36,18 @@ public class WindowsPinger implements Pinger {
 	}
 
 	public PingResult ping(ScanningSubject subject, int count) throws IOException {
+		return ping(subject, count, false);
+	}
+
+	@Override
+	public PingResult ping(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
 		if (subject.isIPv6())
-			return ping6(subject, count);
+			return ping6(subject, count, untilAlive);
 		else
-			return ping4(subject, count);
+			return ping4(subject, count, untilAlive);
 	}
 
-	private PingResult ping4(ScanningSubject subject, int count) throws IOException {
+	private PingResult ping4(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
 		Pointer handle = dll.IcmpCreateFile();
 		if (handle == null) throw new IOException("Unable to create Windows native ICMP handle");
 
@@ -56,12 +60,16 @@ public class WindowsPinger implements Pinger {
 		PingResult result = new PingResult(subject.getAddress(), count);
 		try {
 			IpAddrByVal ipaddr = toIpAddr(subject.getAddress());
-			for (int i = 1; i <= count && !currentThread().isInterrupted(); i++) {
+			for (int i = 1; i <= count && subject.acquirePacket(); i++) {
 				int numReplies = dll.IcmpSendEcho(handle, ipaddr, sendData, (short) sendDataSize, null, replyData, replyDataSize, timeout);
 				IcmpEchoReply echoReply = new IcmpEchoReply(replyData);
 				if (numReplies > 0 && echoReply.status == 0 && Arrays.equals(echoReply.address.bytes, ipaddr.bytes)) {
 					result.addReply(echoReply.roundTripTime);
 					result.setTTL(echoReply.options.ttl & 0xFF);
+					if (untilAlive) {
+						result.limitPacketCount(i);
+						break;
+					}
 				}
 			}
 		}
@@ -71,7 +79,7 @@ public class WindowsPinger implements Pinger {
 		return result;
 	}
 
-	private PingResult ping6(ScanningSubject subject, int count) throws IOException {
+	private PingResult ping6(ScanningSubject subject, int count, boolean untilAlive) throws IOException {
 		Pointer handle = dll.Icmp6CreateFile();
 		if (handle == null) throw new IOException("Unable to create Windows native ICMP6 handle");
 
@@ -84,12 +92,16 @@ public class WindowsPinger implements Pinger {
 		PingResult result = new PingResult(subject.getAddress(), count);
 		try {
 			Ip6SockAddrByRef ipaddr = toIp6Addr(subject.getAddress());
-			for (int i = 1; i <= count && !currentThread().isInterrupted(); i++) {
+			for (int i = 1; i <= count && subject.acquirePacket(); i++) {
 				int numReplies = dll.Icmp6SendEcho2(handle, null, null, null, anyIp6SourceAddr, toIp6Addr(subject.getAddress()),
 						sendData, (short) sendDataSize, null, replyData, replyDataSize, timeout);
 				Icmp6EchoReply echoReply = new Icmp6EchoReply(replyData);
 				if (numReplies > 0 && echoReply.status == 0 && Arrays.equals(echoReply.addressBytes, ipaddr.bytes)) {
 					result.addReply(echoReply.roundTripTime);
+					if (untilAlive) {
+						result.limitPacketCount(i);
+						break;
+					}
 				}
 			}
 		}
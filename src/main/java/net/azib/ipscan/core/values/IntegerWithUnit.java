@@ -5,8 +5,11 @@
  */
 package net.azib.ipscan.core.values;
 
+import java.math.BigDecimal;
+
 /**
  * IntegerWithUnit - an Integer value together with a unit, e.g. "10 ms".
+ * The value may have a fixed number of decimal places, e.g. 10250 with 3 places is "10.250 ms".
  * TODO: IntegerWithUnitTest
  *
  * @author Anton Keks
@@ -14,15 +17,34 @@ package net.azib.ipscan.core.values;
 public class IntegerWithUnit {
 
 	private final int value;
+	/** number of decimal places of the value */
+	private final int scale;
 	private final String unitLabel;
 
 	public IntegerWithUnit(int value, String unitLabel) {
+		this(value, 0, unitLabel);
+	}
+
+	public IntegerWithUnit(int value, int scale, String unitLabel) {
 		this.value = value;
+		this.scale = scale;
 		this.unitLabel = unitLabel;
 	}
 
+	public int getValue() {
+		return value;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public String getUnitLabel() {
+		return unitLabel;
+	}
+
 	public String toString() {
-		return value + unitLabel;/*Labels.getLabel("unit." + unitLabel);*/
+		return (scale == 0 ? String.valueOf(value) : BigDecimal.valueOf(value, scale).toPlainString()) + unitLabel;/*Labels.getLabel("unit." + unitLabel);*/
 	}
 
 	public int hashCode() {
@@ -35,7 +57,7 @@ public class IntegerWithUnit {
 		if (obj == null)
 			return false;
 		if (obj instanceof IntegerWithUnit)
-			return value == ((IntegerWithUnit) obj).value;
+			return value == ((IntegerWithUnit) obj).value && scale == ((IntegerWithUnit) obj).scale;
 		return false;
 	}
 }
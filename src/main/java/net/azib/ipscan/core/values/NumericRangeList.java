@@ -28,6 +28,26 @@ public class NumericRangeList {
 		this.displayAsRanges = displayAsRanges;
 	}
 
+	/**
+	 * Creates a new instance backed by the provided array, which must not be modified afterwards.
+	 */
+	public NumericRangeList(int[] numbers, boolean displayAsRanges) {
+		this.numbers = numbers;
+		this.displayAsRanges = displayAsRanges;
+	}
+
+	public int size() {
+		return numbers.length;
+	}
+
+	public int get(int index) {
+		return numbers[index];
+	}
+
+	public boolean isDisplayAsRanges() {
+		return displayAsRanges;
+	}
+
 	/**
 	 * Outputs nice, human-friendly numeric list, displayed either as ranges or fully
 	 */
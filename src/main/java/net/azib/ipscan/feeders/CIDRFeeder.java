@@ -0,0 +1,35 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import net.azib.ipscan.ScannerConfig;
+
+/**
+ * CIDR Feeder - scans a network block specified in CIDR notation, e.g. 192.168.0.0/24.
+ */
+public class CIDRFeeder extends IPv4RangesFeeder {
+
+	private final String cidr;
+
+	public CIDRFeeder(String cidr, ScannerConfig scannerConfig) {
+		super(scannerConfig);
+		if (cidr.indexOf('/') < 0)
+			throw new FeederException("malformedIP");
+		this.cidr = cidr.trim();
+		addSpec(this.cidr);
+		initIteration();
+	}
+
+	@Override
+	public String getId() {
+		return "feeder.cidr";
+	}
+
+	@Override
+	public String getInfo() {
+		return cidr;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import net.azib.ipscan.core.ScanningSubject;
+
+/**
+ * Feeder - provides addresses for scanning, one by one.
+ */
+public interface Feeder {
+
+	/**
+	 * @return the feeder ID, e.g. feeder.range
+	 */
+	String getId();
+
+	String getName();
+
+	/**
+	 * @return human-readable description of the addresses being scanned
+	 */
+	String getInfo();
+
+	boolean hasNext();
+
+	/**
+	 * @return the next address to scan, must only be called if {@link #hasNext()} returns true
+	 */
+	ScanningSubject next();
+
+	/**
+	 * @return the percentage of addresses returned so far
+	 */
+	double getPercentageComplete();
+}
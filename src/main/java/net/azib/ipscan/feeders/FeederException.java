@@ -16,4 +16,8 @@ public class FeederException extends UserErrorException {
 	public FeederException(String message) {
 		super(message);
 	}
+
+	public FeederException(Throwable cause) {
+		super(cause);
+	}
 }
@@ -0,0 +1,57 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import net.azib.ipscan.ScannerConfig;
+
+/**
+ * File Feeder - scans addresses listed in a text file.
+ * Each line may contain addresses, ranges or CIDR blocks separated by whitespace or commas,
+ * everything after # is a comment.
+ */
+public class FileFeeder extends IPv4RangesFeeder {
+
+	private final File file;
+
+	public FileFeeder(File file, ScannerConfig scannerConfig) {
+		super(scannerConfig);
+		this.file = file;
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) line = line.substring(0, comment);
+				for (String spec : line.split("[\\s,]+")) {
+					if (!spec.isEmpty()) addSpec(spec);
+				}
+			}
+		}
+		catch (NoSuchFileException | FileNotFoundException e) {
+			throw new FeederException("fileNotFound");
+		}
+		catch (IOException e) {
+			throw new FeederException(e);
+		}
+		initIteration();
+	}
+
+	@Override
+	public String getId() {
+		return "feeder.file";
+	}
+
+	@Override
+	public String getInfo() {
+		return file.getName();
+	}
+}
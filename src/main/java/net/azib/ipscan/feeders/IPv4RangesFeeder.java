@@ -0,0 +1,194 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.util.IndexPermutation;
+import org.savarese.vserv.tcpip.OctetConverter;
+
+/**
+ * Base for feeders of one or more IPv4 ranges.
+ * Addresses are iterated as 32-bit numbers, InetAddress is only created for the returned subject.
+ * If {@link ScannerConfig#randomizeOrder} is enabled, addresses of all the ranges are returned
+ * in a pseudo-random order, spreading the load over the subnets.
+ */
+public abstract class IPv4RangesFeeder implements Feeder {
+
+	protected final ScannerConfig scannerConfig;
+
+	/** unsigned 32-bit start addresses of the ranges */
+	private long[] rangeStarts = new long[4];
+	/** number of addresses before each range */
+	private long[] rangeOffsets = new long[4];
+	private int numRanges;
+	private long size;
+
+	private IndexPermutation permutation;
+	/** sequential order from the last address to the first one */
+	private boolean reverse;
+	private long position;
+	/** the range of the last returned address, next() in sequential order just continues from it */
+	private int currentRange;
+
+	@Getter double percentageComplete;
+
+	protected IPv4RangesFeeder(ScannerConfig scannerConfig) {
+		this.scannerConfig = scannerConfig;
+	}
+
+	@Override
+	public String getName() {
+		return getId(); // Labels.getLabel(getId());
+	}
+
+	@Override
+	public String toString() {
+		return getName() + ": " + getInfo();
+	}
+
+	/**
+	 * Parses and adds a single address (192.168.0.1), a range (192.168.0.1-192.168.0.100 or 192.168.0.1-100)
+	 * or a CIDR block (192.168.0.0/24).
+	 */
+	protected void addSpec(String spec) {
+		spec = spec.trim();
+		int slash = spec.indexOf('/');
+		int dash = spec.indexOf('-');
+		if (slash > 0) {
+			long address = parseAddress(spec.substring(0, slash));
+			int prefix = parseNumber(spec.substring(slash + 1), 32);
+			long blockSize = 1L << (32 - prefix);
+			long network = address & ~(blockSize - 1);
+			addRange(network, network + blockSize - 1);
+		}
+		else if (dash > 0) {
+			long start = parseAddress(spec.substring(0, dash));
+			String endSpec = spec.substring(dash + 1).trim();
+			// the end may be specified just as the last octet
+			long end = endSpec.indexOf('.') < 0 ? (start & 0xFFFFFF00L) | parseNumber(endSpec, 255) : parseAddress(endSpec);
+			addRange(Math.min(start, end), Math.max(start, end));
+		}
+		else {
+			long address = parseAddress(spec);
+			addRange(address, address);
+		}
+	}
+
+	private static long parseAddress(String address) {
+		try {
+			InetAddress inetAddress = InetAddress.getByName(address.trim());
+			if (!(inetAddress instanceof Inet4Address))
+				throw new FeederException("differentProtocols");
+			return toUnsigned(inetAddress);
+		}
+		catch (UnknownHostException e) {
+			throw new FeederException("malformedIP");
+		}
+	}
+
+	/**
+	 * @return IPv4 address as an unsigned 32-bit number
+	 */
+	static long toUnsigned(InetAddress address) {
+		return OctetConverter.octetsToInt(address.getAddress()) & 0xFFFFFFFFL;
+	}
+
+	private static int parseNumber(String number, int max) {
+		try {
+			int value = Integer.parseInt(number.trim());
+			if (value < 0 || value > max) throw new FeederException("malformedIP");
+			return value;
+		}
+		catch (NumberFormatException e) {
+			throw new FeederException("malformedIP");
+		}
+	}
+
+	/**
+	 * Adds an inclusive range of unsigned 32-bit addresses
+	 */
+	protected void addRange(long start, long end) {
+		if (numRanges == rangeStarts.length) {
+			rangeStarts = Arrays.copyOf(rangeStarts, numRanges * 2);
+			rangeOffsets = Arrays.copyOf(rangeOffsets, numRanges * 2);
+		}
+		rangeStarts[numRanges] = start;
+		rangeOffsets[numRanges] = size;
+		numRanges++;
+		size += end - start + 1;
+	}
+
+	/**
+	 * Makes the sequential order go from the last address to the first one, has no effect on the randomized order
+	 */
+	protected void setReverse(boolean reverse) {
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Must be called by subclasses after all the ranges are added
+	 */
+	protected void initIteration() {
+		if (size == 0)
+			throw new FeederException("malformedIP");
+		if (scannerConfig.randomizeOrder)
+			permutation = new IndexPermutation(size, ThreadLocalRandom.current().nextLong());
+		position = 0;
+		currentRange = 0;
+		percentageComplete = 0;
+	}
+
+	/**
+	 * @return total number of addresses in all the ranges
+	 */
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return position < size;
+	}
+
+	@Override
+	public ScanningSubject next() {
+		long index = permutation != null ? permutation.get(position) : reverse ? size - 1 - position : position;
+		position++;
+		percentageComplete = 100.0 * position / size;
+		return new ScanningSubject(toInetAddress(addressAt(index)), scannerConfig);
+	}
+
+	private long addressAt(long index) {
+		if (permutation != null || reverse) {
+			currentRange = Arrays.binarySearch(rangeOffsets, 0, numRanges, index);
+			// not the first address of a range: take the range before the insertion point
+			if (currentRange < 0) currentRange = -currentRange - 2;
+		}
+		else {
+			while (currentRange + 1 < numRanges && rangeOffsets[currentRange + 1] <= index) currentRange++;
+		}
+		return rangeStarts[currentRange] + index - rangeOffsets[currentRange];
+	}
+
+	private static InetAddress toInetAddress(long address) {
+		byte[] octets = new byte[4];
+		OctetConverter.intToOctets((int) address, octets);
+		try {
+			return InetAddress.getByAddress(octets);
+		}
+		catch (UnknownHostException e) {
+			// this exception is unexpected here
+			throw new IllegalStateException(e);
+		}
+	}
+}
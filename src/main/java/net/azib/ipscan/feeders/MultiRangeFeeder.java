@@ -0,0 +1,36 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.feeders;
+
+import net.azib.ipscan.ScannerConfig;
+
+/**
+ * Multi-range Feeder - scans several comma-separated addresses, ranges or CIDR blocks,
+ * e.g. 10.0.0.1-10.0.0.50, 192.168.1.0/24, 172.16.0.1
+ */
+public class MultiRangeFeeder extends IPv4RangesFeeder {
+
+	private final String ranges;
+
+	public MultiRangeFeeder(String ranges, ScannerConfig scannerConfig) {
+		super(scannerConfig);
+		this.ranges = ranges.trim();
+		for (String spec : this.ranges.split(",")) {
+			if (!spec.isBlank()) addSpec(spec);
+		}
+		initIteration();
+	}
+
+	@Override
+	public String getId() {
+		return "feeder.ranges";
+	}
+
+	@Override
+	public String getInfo() {
+		return ranges;
+	}
+}
@@ -5,9 +5,9 @@
  */
 package net.azib.ipscan.feeders;
 
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import lombok.Getter;
 import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.ScanningSubject;
 import net.azib.ipscan.util.InetAddressUtils;
@@ -16,50 +16,50 @@ import org.savarese.vserv.tcpip.OctetConverter;
 /**
  * IP Range Feeder.
  * It contains the starting and ending values, which
- * are then iterated sequentially.
+ * are then iterated sequentially (or in a random order, see {@link ScannerConfig#randomizeOrder}).
+ * IPv4 ranges are iterated as 32-bit numbers, IPv6 ones by incrementing the addresses.
  *
  * @author Anton Keks
  */
-public class RangeFeeder {
+public class RangeFeeder extends IPv4RangesFeeder {
 
-	private final ScannerConfig scannerConfig;
-	private InetAddress startIP;
+	private final InetAddress startIP;
+	private final InetAddress originalEndIP;
+	/** the address after the last one of an IPv6 range, null for IPv4 */
 	private InetAddress endIP;
-	private InetAddress originalEndIP;
 	private InetAddress currentIP;
 	boolean isReverse;
 
-	@Getter double percentageComplete;
 	double percentageIncrement;
 
-	public String getName() {
-		return getId(); // Labels.getLabel(getId());
-	}
-
-	@Override
-	public String toString() {
-		return getName() + ": " + getInfo();
-	}
-
 	public String getId() {
 		return "feeder.range";
 	}
 
 	public RangeFeeder(String startIP, String endIP, ScannerConfig scannerConfig) {
-		this.scannerConfig = scannerConfig;
+		super(scannerConfig);
 		try {
 			this.startIP = this.currentIP = InetAddress.getByName(startIP);
-			this.endIP = this.originalEndIP = InetAddress.getByName(endIP);
-			this.isReverse = false;
+			this.originalEndIP = InetAddress.getByName(endIP);
 		}
 		catch (UnknownHostException e) {
 			throw new FeederException("malformedIP");
 		}
-		if (this.startIP.getClass() != this.endIP.getClass()) {
+		if (this.startIP.getClass() != this.originalEndIP.getClass()) {
 			throw new FeederException("differentProtocols");
 		}
-		if (InetAddressUtils.greaterThan(this.startIP, this.endIP)) {
-			this.isReverse = true;
+		this.isReverse = InetAddressUtils.greaterThan(this.startIP, this.originalEndIP);
+
+		if (this.startIP instanceof Inet4Address) {
+			long start = toUnsigned(this.startIP), end = toUnsigned(this.originalEndIP);
+			addRange(Math.min(start, end), Math.max(start, end));
+			setReverse(isReverse);
+			initIteration();
+			return;
+		}
+
+		this.endIP = this.originalEndIP;
+		if (isReverse) {
 			this.endIP = InetAddressUtils.decrement(InetAddressUtils.decrement(this.endIP));
 		}
 		initPercentageIncrement();
@@ -70,23 +70,25 @@ public class RangeFeeder {
 	 * Initalizes fields, used for computation of percentage of completion.
 	 */
 	private void initPercentageIncrement() {
-		byte[] endAddress = this.endIP.getAddress();
-		long rawEndIP = OctetConverter.octetsToInt(endAddress, endAddress.length - 4);
-		long rawStartIP = OctetConverter.octetsToInt(this.startIP.getAddress(), endAddress.length - 4);
-		// make 32-bit unsigned values
-		rawEndIP = rawEndIP >= 0 ? rawEndIP : rawEndIP + Integer.MAX_VALUE;
-		rawStartIP = rawStartIP >= 0 ? rawStartIP : rawStartIP + Integer.MAX_VALUE;
+		byte[] endAddress = this.originalEndIP.getAddress();
+		// make 32-bit unsigned values of the lowest 32 bits
+		long rawEndIP = OctetConverter.octetsToInt(endAddress, endAddress.length - 4) & 0xFFFFFFFFL;
+		long rawStartIP = OctetConverter.octetsToInt(this.startIP.getAddress(), endAddress.length - 4) & 0xFFFFFFFFL;
 		// compute 1% of the whole range
-		percentageIncrement = Math.abs(100.0 / (rawEndIP - rawStartIP + 1));
+		percentageIncrement = 100.0 / (Math.abs(rawEndIP - rawStartIP) + 1);
 		percentageComplete = 0;
 	}
 
+	@Override
 	public boolean hasNext() {
+		if (endIP == null) return super.hasNext();
 		// equals() is faster than greaterThan()
 		return !currentIP.equals(endIP);
 	}
 
+	@Override
 	public ScanningSubject next() {
+		if (endIP == null) return super.next();
 		percentageComplete += percentageIncrement;
 		InetAddress prevIP = this.currentIP;
 		if (this.isReverse) {
@@ -4,6 +4,9 @@
  */
 package net.azib.ipscan.fetchers;
 
+import static java.util.Collections.emptySet;
+
+import java.util.Set;
 import net.azib.ipscan.IPScannerService;
 import net.azib.ipscan.core.ScanningSubject;
 import net.azib.ipscan.core.values.NotAvailable;
@@ -38,12 +41,49 @@ public interface Fetcher extends Cloneable {
 	 */
 	Object scan(ScanningSubject subject);
 
+	/**
+	 * @return names of subject parameters set by other fetchers, which this fetcher makes use of.
+	 * The fetcher is started only after the selected fetchers providing them have finished.
+	 */
+	default Set<String> getRequiredParameters() {
+		return emptySet();
+	}
+
+	/**
+	 * @return names of subject parameters this fetcher sets for other fetchers
+	 */
+	default Set<String> getProvidedParameters() {
+		return emptySet();
+	}
+
+	/**
+	 * @return true if this fetcher may abort scanning of the address,
+	 * then it must finish before any other fetchers are started
+	 */
+	default boolean mayAbortScanning() {
+		return false;
+	}
+
+	/**
+	 * @return true if this fetcher needs the replies to all the pings, otherwise pinging stops at the first reply
+	 */
+	default boolean needsAllPingReplies() {
+		return false;
+	}
+
 	/**
 	 * Called before scanning has started to do any intialization stuff
 	 */
 	default void init() {
 	}
 
+	/**
+	 * Called when a scanning thread running this fetcher is killed, to release resources bound to that thread,
+	 * e.g. a blocking socket. Anything shared by the scan must be left for {@link #cleanup()}.
+	 */
+	default void interrupt(Thread thread) {
+	}
+
 	/**
 	 * Called after the scanning has been completed to do any cleanup needed
 	 */
@@ -4,18 +4,17 @@
  */
 package net.azib.ipscan.fetchers;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
+import java.util.List;
 import lombok.extern.log4j.Log4j2;
 import net.azib.ipscan.IPScannerService;
+import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.util.DNSResolver;
 import net.azib.ipscan.util.MDNSResolver;
-import net.azib.ipscan.util.NetBIOSResolver;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -26,53 +25,79 @@ import org.jetbrains.annotations.NotNull;
 @Log4j2
 public class HostnameFetcher implements Fetcher {
 
-	private static Object inetAddressImpl;
-	private static Method getHostByAddr;
+	private final ScannerConfig config;
+	/** shared by all the scanning threads during a scan, null if nameservers are unknown */
+	private volatile DNSResolver dnsResolver;
+	/** shared by all the scanning threads during a scan, null if multicast is not available */
+	private volatile MDNSResolver mdnsResolver;
 
-	static {
-		try {
-			Field impl = InetAddress.class.getDeclaredField("impl");
-			impl.setAccessible(true);
-			inetAddressImpl = impl.get(null);
-			getHostByAddr = inetAddressImpl.getClass().getDeclaredMethod("getHostByAddr", byte[].class);
-			getHostByAddr.setAccessible(true);
-		}
-		catch (Exception e) {
-			log.warn("Could not get InetAddressImpl", e);
-		}
+	public HostnameFetcher(ScannerConfig config) {
+		this.config = config;
 	}
 
-	public HostnameFetcher() {}
-
     @Override
     public @NotNull IPScannerService.Fetcher getFetcherID() {
         return IPScannerService.Fetcher.Hostname;
     }
 
-	@SuppressWarnings("PrimitiveArrayArgumentToVariableArgMethod")
-	private String resolveWithRegularDNS(InetAddress ip) {
+	@Override
+	public void init() {
+		List<InetSocketAddress> nameservers = DNSResolver.systemNameservers();
+		if (!nameservers.isEmpty()) {
+			try {
+				dnsResolver = new DNSResolver(nameservers, config.dnsTimeout, config.dnsRetries, config.packetRateLimiter);
+			}
+			catch (IOException e) {
+				log.warn("Unable to create DNS resolver, falling back to the system one", e);
+			}
+		}
 		try {
-			// faster way to do lookup - getCanonicalHostName() actually does both reverse and forward lookups inside
-			return (String) getHostByAddr.invoke(inetAddressImpl, ip.getAddress());
+			mdnsResolver = new MDNSResolver(config.packetRateLimiter);
 		}
-		catch (Exception e) {
-			if (e instanceof InvocationTargetException && e.getCause() instanceof UnknownHostException)
-				return null;
+		catch (IOException e) {
+			log.warn("Unable to create mDNS resolver", e);
+		}
+	}
+
+	@Override
+	public void cleanup() {
+		DNSResolver resolver = dnsResolver;
+		dnsResolver = null;
+		if (resolver != null) resolver.close();
+		MDNSResolver multicastResolver = mdnsResolver;
+		mdnsResolver = null;
+		if (multicastResolver != null) multicastResolver.close();
+	}
 
-			// return the returned hostname only if it is not the same as the IP address (this is how the above method works)
-			String hostname = ip.getCanonicalHostName();
-			return ip.getHostAddress().equals(hostname) ? null : hostname;
+	private String resolveWithRegularDNS(InetAddress ip) {
+		DNSResolver resolver = dnsResolver;
+		if (resolver != null) {
+			try {
+				return resolver.resolve(ip);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
 		}
+
+		// getCanonicalHostName() does both reverse and forward lookups inside
+		// the IP address is returned if there is no hostname
+		String hostname = ip.getCanonicalHostName();
+		return ip.getHostAddress().equals(hostname) ? null : hostname;
 	}
 
 	private String resolveWithMulticastDNS(ScanningSubject subject) {
+		MDNSResolver resolver = mdnsResolver;
+		if (resolver == null) return null;
 		try {
-			MDNSResolver resolver = new MDNSResolver(subject.getAdaptedPortTimeout());
-			String name = resolver.resolve(subject.getAddress());
-			resolver.close();
-			return name;
+			return resolver.resolve(subject.getAddress(), subject.getAdaptedPortTimeout());
 		}
-		catch (SocketTimeoutException | SocketException e) {
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (SocketException e) {
 			return null;
 		}
 		catch (Exception e) {
@@ -82,19 +107,9 @@ public class HostnameFetcher implements Fetcher {
 	}
 
 	private String resolveWithNetBIOS(ScanningSubject subject) {
-		try {
-			NetBIOSResolver resolver = new NetBIOSResolver(subject.getAdaptedPortTimeout());
-			String[] names = resolver.resolve(subject.getAddress());
-			resolver.close();
-			return names == null ? null : names[0];
-		}
-		catch (SocketTimeoutException | SocketException e) {
-			return null;
-		}
-		catch (Exception e) {
-			log.warn("Failed to query NetBIOS for " + subject, e);
-			return null;
-		}
+		// the names are shared with NetBIOSInfoFetcher
+		String[] names = config.netBIOSResolver.getNames(subject);
+		return names == null ? null : names[0];
 	}
 
 	public Object scan(ScanningSubject subject) {
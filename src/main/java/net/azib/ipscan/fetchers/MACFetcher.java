@@ -1,6 +1,10 @@
 package net.azib.ipscan.fetchers;
 
+import static java.util.Collections.singleton;
+import static net.azib.ipscan.core.ScanningSubject.PARAMETER_PING_RESULT;
+
 import java.net.InetAddress;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.azib.ipscan.IPScannerService;
@@ -17,14 +21,29 @@ public abstract class MACFetcher implements Fetcher {
         return IPScannerService.Fetcher.MAC;
     }
 
+    @Override
+    public Set<String> getRequiredParameters() {
+        // pinging fills the ARP cache
+        return singleton(PARAMETER_PING_RESULT);
+    }
+
+    @Override
+    public Set<String> getProvidedParameters() {
+        return singleton(IPScannerService.Fetcher.MAC.name());
+    }
+
     @Override
     public final String scan(ScanningSubject subject) {
         String mac = (String) subject.getParameter(IPScannerService.Fetcher.MAC.name());
-			if (mac == null) {mac = resolveMAC(subject.getAddress());}
+			if (mac == null) {mac = resolveMAC(subject);}
         subject.setParameter(IPScannerService.Fetcher.MAC.name(), mac);
         return mac;
     }
 
+    protected String resolveMAC(ScanningSubject subject) {
+        return resolveMAC(subject.getAddress());
+    }
+
     protected abstract String resolveMAC(InetAddress address);
 
     String bytesToMAC(byte[] bytes) {
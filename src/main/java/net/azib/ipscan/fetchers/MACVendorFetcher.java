@@ -1,18 +1,15 @@
 package net.azib.ipscan.fetchers;
 
+import static java.util.Collections.singleton;
+
+import java.util.Set;
 import net.azib.ipscan.IPScannerService;
 import net.azib.ipscan.core.ScanningSubject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
 import org.jetbrains.annotations.NotNull;
 
 public class MACVendorFetcher implements Fetcher {
-	private static final Map<String, String> vendors = new HashMap<>();
 	private final MACFetcher macFetcher;
+	private MACVendorIndex vendors;
 
 	public MACVendorFetcher(MACFetcher macFetcher) {
 		this.macFetcher = macFetcher;
@@ -23,18 +20,15 @@ public class MACVendorFetcher implements Fetcher {
 		return IPScannerService.Fetcher.MACVendor;
 	}
 
+	@Override
+	public Set<String> getRequiredParameters() {
+		return singleton(IPScannerService.Fetcher.MAC.name());
+	}
+
 	@Override
 	public void init() {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/mac-vendors.txt")))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.isEmpty()) continue;
-				vendors.put(line.substring(0, 6), line.substring(6));
-			}
-		}
-		catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		// loaded only once and shared
+		vendors = MACVendorIndex.getInstance();
 	}
 
 	@Override
@@ -48,6 +42,6 @@ public class MACVendorFetcher implements Fetcher {
 	}
 
 	String findMACVendor(String mac) {
-		return vendors.get(mac.replace(":", "").substring(0, 6));
+		return vendors.find(mac);
 	}
 }
@@ -0,0 +1,253 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.fetchers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only index of MAC vendors, looked up by the longest matching prefix:
+ * MA-S (36 bits), MA-M (28 bits) or MA-L (24 bits, the OUI).
+ * <p>
+ * The index is compiled from mac-vendors.txt during the build, see {@link #main(String[])}.
+ * Lines of the text file are hex prefixes followed by the vendor name, e.g. "00000CCisco".
+ * Longer prefixes specify their length in bits, e.g. "70B3D5123/36Vendor" or "F81D0F1/28Vendor".
+ * <p>
+ * The compiled index is memory-mapped if possible and shared by all the fetchers.
+ * Lookups don't allocate anything, apart from decoding of each vendor name once.
+ */
+public final class MACVendorIndex {
+	static final String INDEX_RESOURCE = "/mac-vendors.idx";
+	static final String TEXT_RESOURCE = "/mac-vendors.txt";
+
+	private static final int MAGIC = 0x4D414356; // MACV
+	private static final int VERSION = 1;
+	private static final int[] PREFIX_BITS = {36, 28, 24};
+	private static final int HEADER_SIZE = 4 * (2 + PREFIX_BITS.length + 1);
+
+	private final ByteBuffer buffer;
+	/** offsets of the prefix tables in the order of {@link #PREFIX_BITS} */
+	private final int[] keyOffsets = new int[PREFIX_BITS.length];
+	private final int[] vendorIndexOffsets = new int[PREFIX_BITS.length];
+	private final int[] counts = new int[PREFIX_BITS.length];
+	private final int vendorOffsetsOffset;
+	private final int vendorBytesOffset;
+	/** vendor names are decoded on first access */
+	private final String[] vendors;
+
+	private static class Holder {
+		static final MACVendorIndex INSTANCE = load();
+	}
+
+	MACVendorIndex(ByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Not a MAC vendor index");
+
+		int offset = HEADER_SIZE;
+		for (int i = 0; i < PREFIX_BITS.length; i++) {
+			counts[i] = buffer.getInt(8 + 4 * i);
+			keyOffsets[i] = offset;
+			offset += counts[i] * keySize(PREFIX_BITS[i]);
+			vendorIndexOffsets[i] = offset;
+			offset += counts[i] * 4;
+		}
+		int vendorCount = buffer.getInt(8 + 4 * PREFIX_BITS.length);
+		vendorOffsetsOffset = offset;
+		vendorBytesOffset = offset + (vendorCount + 1) * 4;
+		vendors = new String[vendorCount];
+	}
+
+	/**
+	 * @return the shared index, loaded on first access
+	 */
+	public static MACVendorIndex getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	private static MACVendorIndex load() {
+		try {
+			URL url = MACVendorIndex.class.getResource(INDEX_RESOURCE);
+			if (url != null && "file".equals(url.getProtocol())) {
+				try (FileChannel channel = FileChannel.open(Path.of(url.toURI()))) {
+					return new MACVendorIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+				}
+			}
+			if (url != null) {
+				// packed in a jar, can't be mapped
+				try (InputStream in = url.openStream()) {
+					return new MACVendorIndex(ByteBuffer.wrap(in.readAllBytes()));
+				}
+			}
+			// not compiled, e.g. when running from an IDE
+			try (Reader reader = new InputStreamReader(MACVendorIndex.class.getResourceAsStream(TEXT_RESOURCE), UTF_8)) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				compile(reader, out);
+				return new MACVendorIndex(ByteBuffer.wrap(out.toByteArray()));
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param mac like 00:1A:2B:3C:4D:5E or 00-1a-2b-3c-4d-5e
+	 * @return the vendor or null if it is unknown
+	 */
+	public String find(String mac) {
+		long address = 0;
+		int digits = 0;
+		for (int i = 0; i < mac.length(); i++) {
+			int digit = Character.digit(mac.charAt(i), 16);
+			if (digit >= 0) {
+				address = address << 4 | digit;
+				digits++;
+			}
+		}
+		return digits == 12 ? find(address) : null;
+	}
+
+	/**
+	 * @param mac 48-bit MAC address
+	 * @return the vendor of the longest matching prefix or null if it is unknown
+	 */
+	public String find(long mac) {
+		for (int i = 0; i < PREFIX_BITS.length; i++) {
+			int index = search(i, mac >>> (48 - PREFIX_BITS[i]));
+			if (index >= 0) return vendor(buffer.getInt(vendorIndexOffsets[i] + index * 4));
+		}
+		return null;
+	}
+
+	private int search(int table, long prefix) {
+		int size = keySize(PREFIX_BITS[table]);
+		int low = 0, high = counts[table] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int offset = keyOffsets[table] + middle * size;
+			long key = size == 8 ? buffer.getLong(offset) : buffer.getInt(offset) & 0xFFFFFFFFL;
+			if (key < prefix) low = middle + 1;
+			else if (key > prefix) high = middle - 1;
+			else return middle;
+		}
+		return -1;
+	}
+
+	private String vendor(int index) {
+		String vendor = vendors[index];
+		if (vendor == null) {
+			int start = buffer.getInt(vendorOffsetsOffset + index * 4);
+			int end = buffer.getInt(vendorOffsetsOffset + index * 4 + 4);
+			byte[] bytes = new byte[end - start];
+			buffer.get(vendorBytesOffset + start, bytes);
+			// racing threads decode the same string, so the race is harmless
+			vendors[index] = vendor = new String(bytes, UTF_8);
+		}
+		return vendor;
+	}
+
+	private static int keySize(int prefixBits) {
+		return prefixBits > 32 ? 8 : 4;
+	}
+
+	/**
+	 * Compiles the text file with vendors to the binary index. Later duplicates replace earlier ones.
+	 */
+	static void compile(Reader text, OutputStream index) throws IOException {
+		List<TreeMap<Long, Integer>> tables = new ArrayList<>();
+		for (int i = 0; i < PREFIX_BITS.length; i++) tables.add(new TreeMap<>());
+		Map<String, Integer> vendorIndexes = new LinkedHashMap<>();
+
+		BufferedReader reader = new BufferedReader(text);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) continue;
+			int bits = 24;
+			for (int prefixBits : PREFIX_BITS) {
+				if (line.startsWith("/" + prefixBits, prefixBits / 4)) bits = prefixBits;
+			}
+			int digits = bits / 4;
+			int nameStart = line.startsWith("/" + bits, digits) ? digits + 3 : digits;
+			long prefix;
+			try {
+				prefix = Long.parseLong(line.substring(0, digits), 16);
+			}
+			catch (RuntimeException e) {
+				throw new IOException("Invalid MAC vendor prefix: " + line);
+			}
+			Integer vendorIndex = vendorIndexes.computeIfAbsent(line.substring(nameStart), name -> vendorIndexes.size());
+			tables.get(indexOf(bits)).put(prefix, vendorIndex);
+		}
+
+		DataOutputStream out = new DataOutputStream(index);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		for (TreeMap<Long, Integer> table : tables) out.writeInt(table.size());
+		out.writeInt(vendorIndexes.size());
+		for (int i = 0; i < PREFIX_BITS.length; i++) {
+			for (long prefix : tables.get(i).keySet()) {
+				if (keySize(PREFIX_BITS[i]) == 8) out.writeLong(prefix);
+				else out.writeInt((int) prefix);
+			}
+			for (int vendorIndex : tables.get(i).values()) out.writeInt(vendorIndex);
+		}
+		List<byte[]> names = new ArrayList<>();
+		int offset = 0;
+		out.writeInt(offset);
+		for (String vendor : vendorIndexes.keySet()) {
+			byte[] name = vendor.getBytes(UTF_8);
+			names.add(name);
+			offset += name.length;
+			out.writeInt(offset);
+		}
+		for (byte[] name : names) out.write(name);
+		out.flush();
+	}
+
+	private static int indexOf(int prefixBits) {
+		for (int i = 0; i < PREFIX_BITS.length; i++) {
+			if (PREFIX_BITS[i] == prefixBits) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compiles the index during the build.
+	 * @param args the source text file and the index file to write
+	 */
+	public static void main(String[] args) throws IOException {
+		Path index = Path.of(args[1]);
+		Files.createDirectories(index.toAbsolutePath().getParent());
+		try (Reader text = Files.newBufferedReader(Path.of(args[0]), UTF_8);
+			 OutputStream out = Files.newOutputStream(index)) {
+			compile(text, out);
+		}
+	}
+}
@@ -6,12 +6,9 @@
 
 package net.azib.ipscan.fetchers;
 
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
-import lombok.extern.log4j.Log4j2;
 import net.azib.ipscan.IPScannerService;
+import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.ScanningSubject;
-import net.azib.ipscan.util.NetBIOSResolver;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -20,9 +17,12 @@ import org.jetbrains.annotations.NotNull;
  *
  * @author Anton Keks
  */
-@Log4j2
 public class NetBIOSInfoFetcher implements Fetcher {
-	public NetBIOSInfoFetcher() {}
+	private final ScannerConfig config;
+
+	public NetBIOSInfoFetcher(ScannerConfig config) {
+		this.config = config;
+	}
 
     @Override
     public @NotNull IPScannerService.Fetcher getFetcherID() {
@@ -30,31 +30,17 @@ public class NetBIOSInfoFetcher implements Fetcher {
     }
 
 	public Object scan(ScanningSubject subject) {
-		try (NetBIOSResolver netbios = new NetBIOSResolver(subject.getAdaptedPortTimeout())) {
-			String[] names = netbios.resolve(subject.getAddress());
-			if (names == null) return null;
-
-			String computerName = names[0];
-			String userName = names[1];
-			String groupName = names[2];
-			String macAddress = names[3];
-
-			return (groupName != null ? groupName + "\\" : "") +
-					(userName != null ? userName + "@" : "") +
-					(computerName != null ? computerName + ' ' : "") + '[' + macAddress + ']';
-		}
-		catch (SocketTimeoutException e) {
-			// this is not a derivative of SocketException
-			return null;
-		}
-		catch (SocketException e) {
-			// this includes PortUnreachableException
-			return null;
-		}
-		catch (Exception e) {
-			// bugs?
-			log.warn(e);
-			return null;
-		}
+		// HostnameFetcher may have already queried the subject
+		String[] names = config.netBIOSResolver.getNames(subject);
+		if (names == null) return null;
+
+		String computerName = names[0];
+		String userName = names[1];
+		String groupName = names[2];
+		String macAddress = names[3];
+
+		return (groupName != null ? groupName + "\\" : "") +
+				(userName != null ? userName + "@" : "") +
+				(computerName != null ? computerName + ' ' : "") + '[' + macAddress + ']';
 	}
 }
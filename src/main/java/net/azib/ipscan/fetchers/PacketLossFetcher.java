@@ -27,6 +27,16 @@ public class PacketLossFetcher extends PingFetcher {
 		return IPScannerService.Fetcher.PacketLoss;
 	}
 
+	@Override
+	public boolean mayAbortScanning() {
+		return false;
+	}
+
+	@Override
+	public boolean needsAllPingReplies() {
+		return true;
+	}
+
 	public Object scan(ScanningSubject subject) {
 		PingResult result = executePing(subject);
 		subject.setResultType(result.isAlive() ? ALIVE : DEAD);
@@ -4,9 +4,16 @@
  */
 package net.azib.ipscan.fetchers;
 
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static net.azib.ipscan.core.ScanningSubject.PARAMETER_PING_RESULT;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
@@ -30,6 +37,11 @@ import org.jetbrains.annotations.NotNull;
 @RequiredArgsConstructor
 public class PingFetcher implements Fetcher {
 
+	/** Pinging in progress, shared by all ping fetchers of a subject */
+	private static final String PARAMETER_PING_FUTURE = "pingerFuture";
+	/** extra time to wait for a ping to complete after all its timeouts, in ms */
+	private static final long PING_WAIT_SLACK_MS = 1000;
+
 	/** The shared pinger - this one must be static, because PingTTLFetcher will use it as well */
 	private static volatile Pinger pinger;
 	private static final AtomicInteger pingerUsers = new AtomicInteger();
@@ -43,23 +55,106 @@ public class PingFetcher implements Fetcher {
 		return IPScannerService.Fetcher.Ping;
 	}
 
-	protected PingResult executePing(ScanningSubject subject) {
-		if (subject.hasParameter(PARAMETER_PING_RESULT))
-			return (PingResult) subject.getParameter(PARAMETER_PING_RESULT);
+	@Override
+	public Set<String> getProvidedParameters() {
+		return singleton(PARAMETER_PING_RESULT);
+	}
+
+	@Override
+	public boolean mayAbortScanning() {
+		return !config.scanDeadHosts;
+	}
+
+	@Override
+	public boolean needsAllPingReplies() {
+		// the average round trip time is taken over all the replies
+		return true;
+	}
 
-		PingResult result;
+	protected PingResult executePing(ScanningSubject subject) {
 		try {
-			result = pinger.ping(subject, config.pingCount);
+			return executePingAsync(subject).get();
 		}
-		catch (IOException e) {
-			// if this is not a timeout
-			log.warn("Pinging failed", e);
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			// return an empty ping result
-			result = new PingResult(subject.getAddress(), 0);
+			return new PingResult(subject.getAddress(), 0);
+		}
+		catch (ExecutionException e) {
+			// failures are converted to empty results by executePingAsync
+			throw new IllegalStateException(e.getCause());
 		}
-		// remember the result for other fetchers to use
-		subject.setParameter(PARAMETER_PING_RESULT, result);
-		return result;
+	}
+
+	/**
+	 * Starts pinging of the subject without waiting for the replies.
+	 * Several ping fetchers may run concurrently for the same subject, but it is pinged only once.
+	 * The result is remembered in the subject once available, so a later {@link #scan} will not ping again.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<PingResult> executePingAsync(ScanningSubject subject) {
+		if (subject.hasParameter(PARAMETER_PING_RESULT))
+			return CompletableFuture.completedFuture((PingResult) subject.getParameter(PARAMETER_PING_RESULT));
+
+		CompletableFuture<PingResult> future = new CompletableFuture<>();
+		Object existing = subject.setParameterIfAbsent(PARAMETER_PING_FUTURE, future);
+		if (existing != null)
+			return (CompletableFuture<PingResult>) existing;
+
+		pingAsync(subject, config.pingUntilAlive).whenComplete((result, e) -> {
+			try {
+				// remember the result for other fetchers to use
+				subject.setParameter(PARAMETER_PING_RESULT, result);
+				// replies of alive hosts drive adaptation of the packet rate
+				if (result.isAlive())
+					config.packetRateLimiter.onReplies(result.getPacketCount(), result.getReplyCount(), result.getAverageTime());
+			}
+			finally {
+				// other fetchers of the subject may be waiting for it
+				future.complete(result);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Finds out whether the subject is alive, pinging it only until the first reply.
+	 * If some selected fetcher needs all the replies, the result of an alive subject is not remembered,
+	 * so it is pinged again by a later {@link #executePingAsync}. Results of dead subjects are final anyway.
+	 */
+	public CompletableFuture<PingResult> checkAliveAsync(ScanningSubject subject) {
+		if (config.pingUntilAlive || subject.hasParameter(PARAMETER_PING_RESULT))
+			return executePingAsync(subject);
+
+		return pingAsync(subject, true).thenApply(result -> {
+			if (!result.isAlive())
+				subject.setParameterIfAbsent(PARAMETER_PING_RESULT, result);
+			return result;
+		});
+	}
+
+	/**
+	 * @return max time a ping takes to complete, in ms, after which it results in an empty ping result
+	 */
+	public long getMaxPingTime() {
+		return (long) config.pingTimeout * config.pingCount + PING_WAIT_SLACK_MS;
+	}
+
+	/**
+	 * @return the result of pinging, never failing: failures result in an empty ping result
+	 */
+	private CompletableFuture<PingResult> pingAsync(ScanningSubject subject, boolean untilAlive) {
+		return pinger.pingAsync(subject, config.pingCount, untilAlive)
+			// pingers time out by themselves, this is just a guard against a lost completion
+			.orTimeout(getMaxPingTime(), MILLISECONDS)
+			.exceptionally(e -> {
+				if (e instanceof TimeoutException)
+					log.warn("Pinging of {} has not completed in time", subject);
+				else
+					log.warn("Pinging failed", e);
+				// return an empty ping result
+				return new PingResult(subject.getAddress(), 0);
+			});
 	}
 
 	public Object scan(ScanningSubject subject) {
@@ -71,7 +166,8 @@ public class PingFetcher implements Fetcher {
 			subject.abortAddressScanning();
 		}
 
-		return result.isAlive() ? new IntegerWithUnit(result.getAverageTime(), "ms") : null;
+		// in ms with 3 decimal places, so that round trip times within a LAN are not shown as 0
+		return result.isAlive() ? new IntegerWithUnit((int) NANOSECONDS.toMicros(result.getAverageTimeNanos()), 3, "ms") : null;
 	}
 
 	public void init() {
@@ -29,6 +29,17 @@ public class PingTTLFetcher extends PingFetcher {
 		return IPScannerService.Fetcher.PingTTL;
 	}
 
+	@Override
+	public boolean mayAbortScanning() {
+		return false;
+	}
+
+	@Override
+	public boolean needsAllPingReplies() {
+		// any reply carries the TTL
+		return false;
+	}
+
 	public Object scan(ScanningSubject subject) {
 		PingResult result = executePing(subject);
 		subject.setResultType(result.isAlive() ? ResultType.ALIVE : ResultType.DEAD);
@@ -7,6 +7,7 @@ package net.azib.ipscan.fetchers;
 
 import static java.lang.Thread.currentThread;
 import static java.util.Collections.singleton;
+import static net.azib.ipscan.core.ScanningSubject.PARAMETER_PING_RESULT;
 import static net.azib.ipscan.fetchers.PortsFetcher.PARAMETER_OPEN_PORTS;
 
 import java.io.BufferedReader;
@@ -18,6 +19,7 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -52,6 +54,12 @@ public abstract class PortTextFetcher implements Fetcher {
 		this.extractGroup = 1;
 	}
 
+	@Override
+	public Set<String> getRequiredParameters() {
+		// open ports are used if scanOpenPorts is enabled, ping results are needed for the adapted timeout
+		return Set.of(PARAMETER_PING_RESULT, PARAMETER_OPEN_PORTS);
+	}
+
 	public Object scan(ScanningSubject subject) {
 		Iterator<Integer> portIterator = getPortIterator(subject);
 
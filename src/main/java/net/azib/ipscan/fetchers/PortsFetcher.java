@@ -5,12 +5,11 @@
  */
 package net.azib.ipscan.fetchers;
 
-import java.io.IOException;
-import java.net.ConnectException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import static java.util.Collections.singleton;
+import static net.azib.ipscan.core.ScanningSubject.PARAMETER_PING_RESULT;
+
 import java.util.Iterator;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import net.azib.ipscan.IPScannerService;
@@ -18,10 +17,11 @@ import net.azib.ipscan.ScannerConfig;
 import net.azib.ipscan.core.PortIterator;
 import net.azib.ipscan.core.ScanningResult.ResultType;
 import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.core.net.PortScanner;
+import net.azib.ipscan.core.net.PortScannerRegistry;
 import net.azib.ipscan.core.values.NotScanned;
 import net.azib.ipscan.core.values.NumericRangeList;
 import net.azib.ipscan.util.SequenceIterator;
-import net.azib.ipscan.util.ThreadResourceBinder;
 import org.homio.hquery.ProgressBar;
 import org.jetbrains.annotations.NotNull;
 
@@ -37,13 +37,16 @@ public class PortsFetcher implements Fetcher {
 	static final String PARAMETER_FILTERED_PORTS = "filteredPorts";
 
 	private final ScannerConfig config;
-	private final ThreadResourceBinder<Socket> sockets = new ThreadResourceBinder<>();
+	/** The registry used for creation of PortScanner instances */
+	private final PortScannerRegistry portScannerRegistry;
+	private PortScanner portScanner;
 
 	// initialize preferences for this scan
 	private PortIterator portIteratorPrototype;
 	protected boolean displayAsRanges = true;	// TODO: make configurable
 
-	public PortsFetcher(ScannerConfig scannerConfig) {
+	public PortsFetcher(PortScannerRegistry portScannerRegistry, ScannerConfig scannerConfig) {
+		this.portScannerRegistry = portScannerRegistry;
 		this.config = scannerConfig;
 	}
 
@@ -52,6 +55,23 @@ public class PortsFetcher implements Fetcher {
 		return IPScannerService.Fetcher.Ports;
 	}
 
+	@Override
+	public Set<String> getRequiredParameters() {
+		// for adaptation of the port timeout
+		return singleton(PARAMETER_PING_RESULT);
+	}
+
+	@Override
+	public Set<String> getProvidedParameters() {
+		return Set.of(PARAMETER_OPEN_PORTS, PARAMETER_FILTERED_PORTS);
+	}
+
+	@Override
+	public boolean needsAllPingReplies() {
+		// port timeouts are adapted only after several replies
+		return config.adaptPortTimeout;
+	}
+
 	@Override
 	public String getFullName() {
 		int numPorts = new PortIterator(config.portString).size();
@@ -92,39 +112,10 @@ public class PortsFetcher implements Fetcher {
 			String address = subject.getAddress().getHostAddress();
 			ProgressBar progressBar = this.config.context.ui().progress().createProgressBar(address
 				+ "ipscanner-ports", size < 3, () -> {});
-			double delta = 100D / size, progress = 0D;
 
 			try {
-				while (portsIterator.hasNext() && !Thread.currentThread().isInterrupted()) {
-					// TODO: UDP ports?
-					Socket socket = sockets.bind(new Socket());
-					int port = portsIterator.next();
-					try {
-						if (progressBar.isCancelled()) {
-							return true;
-						}
-						progressBar.progress(progress, "%s [%d]".formatted(address, port));
-						progress += delta;
-						// set some optimization options
-						socket.setReuseAddress(true);
-						socket.setReceiveBufferSize(32);
-						// now connect
-						socket.connect(new InetSocketAddress(subject.getAddress(), port), portTimeout);
-						// some more options
-						socket.setSoLinger(true, 0);
-						socket.setSendBufferSize(16);
-						socket.setTcpNoDelay(true);
-
-						if (socket.isConnected()) {openPorts.add(port);}
-					} catch (SocketTimeoutException e) {
-						filteredPorts.add(port);
-					} catch (IOException e) {
-						// connection refused
-						assert e instanceof ConnectException : e;
-					} finally {
-						sockets.closeAndUnbind(socket);
-					}
-				}
+				portScanner.scanPorts(subject, new ProgressPortIterator(portsIterator, progressBar, subject, address, size),
+					portTimeout, openPorts, filteredPorts);
 			} finally {
 				progressBar.done();
 			}
@@ -153,10 +144,54 @@ public class PortsFetcher implements Fetcher {
 	public void init() {
 		// rebuild port iterator before each scan
 		this.portIteratorPrototype = new PortIterator(config.portString);
+		this.portScanner = portScannerRegistry.createPortScanner();
+	}
+
+	@Override
+	public void interrupt(Thread thread) {
+		if (portScanner != null) portScanner.interrupt(thread);
 	}
 
-  @Override
-  public void cleanup() {
-    sockets.close();
-  }
+	@Override
+	public void cleanup() {
+		if (portScanner != null) portScanner.close();
+	}
+
+	/**
+	 * Reports progress of port scanning and aborts scanning of the address if the progress bar is cancelled
+	 */
+	private static class ProgressPortIterator implements Iterator<Integer> {
+		private final Iterator<Integer> ports;
+		private final ProgressBar progressBar;
+		private final ScanningSubject subject;
+		private final String address;
+		private final double delta;
+		private double progress;
+
+		ProgressPortIterator(Iterator<Integer> ports, ProgressBar progressBar, ScanningSubject subject, String address, int size) {
+			this.ports = ports;
+			this.progressBar = progressBar;
+			this.subject = subject;
+			this.address = address;
+			this.delta = 100D / size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (progressBar.isCancelled()) {
+				// the rest of the fetchers should not scan this address either
+				subject.abortAddressScanning();
+				return false;
+			}
+			return ports.hasNext();
+		}
+
+		@Override
+		public Integer next() {
+			int port = ports.next();
+			progressBar.progress(progress, "%s [%d]".formatted(address, port));
+			progress += delta;
+			return port;
+		}
+	}
 }
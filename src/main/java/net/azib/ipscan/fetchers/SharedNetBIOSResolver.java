@@ -0,0 +1,78 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.fetchers;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import lombok.extern.log4j.Log4j2;
+import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.util.NetBIOSResolver;
+
+/**
+ * NetBIOS resolver shared by HostnameFetcher and NetBIOSInfoFetcher during a scan.
+ * Each subject is queried only once, the names are remembered in the subject for both fetchers.
+ * It is opened by the Scanner when a scan using it starts and closed after the scan.
+ */
+@Log4j2
+public final class SharedNetBIOSResolver {
+
+	/** future NetBIOS names of the subject, see {@link NetBIOSResolver#resolve} */
+	static final String PARAMETER_NETBIOS_NAMES = "netbiosNames";
+
+	/** null if not opened or failed to open */
+	private volatile NetBIOSResolver resolver;
+
+	public synchronized void open() {
+		close();
+		try {
+			resolver = new NetBIOSResolver();
+		}
+		catch (IOException e) {
+			log.warn("Unable to create NetBIOS resolver", e);
+		}
+	}
+
+	public synchronized void close() {
+		NetBIOSResolver netbios = resolver;
+		resolver = null;
+		if (netbios != null) netbios.close();
+	}
+
+	/**
+	 * @return computer name, user name, group name and MAC address, or null if there is no response
+	 */
+	@SuppressWarnings("unchecked")
+	String[] getNames(ScanningSubject subject) {
+		NetBIOSResolver netbios = resolver;
+		if (netbios == null) return null;
+
+		try {
+			CompletableFuture<String[]> future = new CompletableFuture<>();
+			Object existing = subject.setParameterIfAbsent(PARAMETER_NETBIOS_NAMES, future);
+			if (existing != null)
+				return ((CompletableFuture<String[]>) existing).get();
+
+			try {
+				if (subject.acquirePacket())
+					netbios.resolveAsync(subject.getAddress(), subject.getAdaptedPortTimeout()).whenComplete((names, e) -> future.complete(names));
+				else
+					future.complete(null);
+			}
+			catch (IOException e) {
+				future.complete(null);
+			}
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			return null;
+		}
+	}
+}
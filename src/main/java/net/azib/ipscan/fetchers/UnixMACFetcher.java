@@ -1,29 +1,79 @@
 package net.azib.ipscan.fetchers;
 
+import static net.azib.ipscan.core.ScanningSubject.PARAMETER_PING_RESULT;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Enumeration;
+import net.azib.ipscan.ScannerConfig;
+import net.azib.ipscan.core.ScanningSubject;
+import net.azib.ipscan.core.net.PingResult;
+import net.azib.ipscan.core.net.NeighborTable;
 import org.apache.commons.lang3.SystemUtils;
+import org.savarese.vserv.tcpip.OctetConverter;
 
 public class UnixMACFetcher extends MACFetcher {
 	private final String arp;
+	private final NeighborTable neighborTable;
 
-	public UnixMACFetcher() {
+	public UnixMACFetcher(ScannerConfig config) {
 		if (SystemUtils.IS_OS_LINUX)
 			arp = "arp -an "; // use BSD-style output
 		else
 			arp = "arp -n ";  // Mac and other BSD
+		neighborTable = new NeighborTable(config.neighborTableRefreshInterval);
+	}
+
+	@Override
+	public void init() {
+		// entries of the previous scan may be outdated
+		neighborTable.reset();
+	}
+
+	@Override protected String resolveMAC(ScanningSubject subject) {
+		PingResult pingResult = (PingResult) subject.getParameter(PARAMETER_PING_RESULT);
+		return resolveMAC(subject.getAddress(), pingResult != null && pingResult.isAlive());
 	}
 
 	@Override public String resolveMAC(InetAddress address) {
+		return resolveMAC(address, true);
+	}
+
+	/**
+	 * @param replied whether the host has just replied to a ping, so it may be missing from an older neighbor table
+	 */
+	private String resolveMAC(InetAddress address, boolean replied) {
+		try {
+			String mac = null;
+			if (address instanceof Inet4Address && neighborTable.isAvailable())
+				mac = neighborTable.getMAC(OctetConverter.octetsToInt(address.getAddress()), replied);
+			// the lookup above may have just found that the neighbor table can't be read
+			if (mac == null && !(address instanceof Inet4Address && neighborTable.isAvailable())) {
+				// ask the arp command about the address
+				mac = runArp(address);
+			}
+			return mac != null ? mac : findLocalMAC(address);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The last resort, as it runs a process per address
+	 */
+	private String runArp(InetAddress address) throws Exception {
 		String ip = address.getHostAddress();
 		BufferedReader reader = null;
 		try {
-			// highly inefficient implementation, there must be a better way (using JNA?)
 			Process process = Runtime.getRuntime().exec(arp + ip);
 			reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
 			String line;
@@ -31,27 +81,29 @@ public class UnixMACFetcher extends MACFetcher {
 				if (line.contains(ip))
 					return extractMAC(line);
 			}
-
-			// see if it is a local address
-			Enumeration<NetworkInterface> ifs = NetworkInterface.getNetworkInterfaces();
-			while (ifs.hasMoreElements()) {
-				NetworkInterface netif = ifs.nextElement();
-				if (netif.isUp() && !netif.isVirtual() && !netif.isLoopback()) {
-					Enumeration<InetAddress> addrs = netif.getInetAddresses();
-					while (addrs.hasMoreElements()) {
-						InetAddress addr = addrs.nextElement();
-						if (addr.equals(address))
-							return bytesToMAC(netif.getHardwareAddress());
-					}
-				}
-			}
-			return null;
-		}
-		catch (Exception e) {
 			return null;
 		}
 		finally {
 			closeQuietly(reader);
 		}
 	}
+
+	/**
+	 * Local addresses are not in the neighbor table
+	 */
+	private String findLocalMAC(InetAddress address) throws Exception {
+		Enumeration<NetworkInterface> ifs = NetworkInterface.getNetworkInterfaces();
+		while (ifs.hasMoreElements()) {
+			NetworkInterface netif = ifs.nextElement();
+			if (netif.isUp() && !netif.isVirtual() && !netif.isLoopback()) {
+				Enumeration<InetAddress> addrs = netif.getInetAddresses();
+				while (addrs.hasMoreElements()) {
+					InetAddress addr = addrs.nextElement();
+					if (addr.equals(address))
+						return bytesToMAC(netif.getHardwareAddress());
+				}
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,342 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Non-blocking reverse DNS (PTR) resolver, shared by all the scanning threads.
+ * Queries are pipelined over a single UDP socket and matched to responses by their IDs.
+ * Unanswered queries are retried with the next nameserver, answers are cached according to their TTLs,
+ * including negative ones.
+ */
+@Log4j2
+public class DNSResolver implements Closeable {
+	private static final Path RESOLV_CONF = Path.of("/etc/resolv.conf");
+	private static final int DNS_PORT = 53;
+	private static final int TYPE_SOA = 6;
+	private static final int TYPE_PTR = 12;
+	private static final int CLASS_IN = 1;
+	private static final int RCODE_OK = 0;
+	private static final int RCODE_NXDOMAIN = 3;
+	/** negative answers without SOA records are cached for this long, seconds */
+	private static final int DEFAULT_NEGATIVE_TTL = 300;
+
+	private final List<InetSocketAddress> nameservers;
+	private final int timeout;
+	private final int retries;
+	private final RateLimiter packetRateLimiter;
+	private final DatagramSocket socket = new DatagramSocket();
+	private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = new Thread(r, "DNS retries");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Thread receiverThread = new Thread(this::receive, "DNS receiver");
+
+	/** queries waiting for responses by IDs, synchronized on itself */
+	private final IntObjectMap<Query> pending = new IntObjectMap<>();
+	/** queries by names, concurrent requests for the same name share the query */
+	private final Map<String, Query> inFlight = new ConcurrentHashMap<>();
+	private final Map<String, CachedAnswer> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param timeout per query attempt, in ms
+	 * @param retries number of attempts after the first one, each with the next nameserver
+	 * @param packetRateLimiter limits sending of the queries, including the retries
+	 */
+	public DNSResolver(List<InetSocketAddress> nameservers, int timeout, int retries, RateLimiter packetRateLimiter) throws IOException {
+		if (nameservers.isEmpty()) throw new IllegalArgumentException("No nameservers");
+		this.nameservers = nameservers;
+		this.timeout = timeout;
+		this.retries = retries;
+		this.packetRateLimiter = packetRateLimiter;
+		timer.setRemoveOnCancelPolicy(true);
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+	}
+
+	/**
+	 * @return nameservers configured in /etc/resolv.conf, empty if there is no such file, e.g. on Windows
+	 */
+	public static List<InetSocketAddress> systemNameservers() {
+		List<InetSocketAddress> nameservers = new ArrayList<>();
+		if (!Files.isReadable(RESOLV_CONF)) return nameservers;
+		try {
+			for (String line : Files.readAllLines(RESOLV_CONF)) {
+				String[] words = line.trim().split("\\s+");
+				if (words.length >= 2 && words[0].equals("nameserver")) {
+					try {
+						nameservers.add(new InetSocketAddress(InetAddress.getByName(words[1]), DNS_PORT));
+					}
+					catch (IOException e) {
+						log.warn("Invalid nameserver in " + RESOLV_CONF + ": " + words[1]);
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			log.warn("Unable to read " + RESOLV_CONF, e);
+		}
+		return nameservers;
+	}
+
+	/**
+	 * Blocks until the answer or the last timeout.
+	 * @return the hostname or null if there is none
+	 */
+	public String resolve(InetAddress ip) throws InterruptedException {
+		try {
+			return resolveAsync(ip).get();
+		}
+		catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the future hostname, completed with null if there is none
+	 */
+	public CompletableFuture<String> resolveAsync(InetAddress ip) {
+		String name = reverseName(ip.getAddress());
+		CachedAnswer cached = cache.get(name);
+		if (cached != null) {
+			if (cached.expiresAt - System.nanoTime() > 0) return CompletableFuture.completedFuture(cached.hostname);
+			cache.remove(name, cached);
+		}
+
+		Query query = new Query(name);
+		Query existing = inFlight.putIfAbsent(name, query);
+		if (existing != null) return existing.future;
+		send(query);
+		return query.future;
+	}
+
+	private void send(Query query) {
+		try {
+			packetRateLimiter.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			complete(query, null, -1);
+			return;
+		}
+
+		int id;
+		synchronized (pending) {
+			// random IDs make spoofing of responses harder
+			do id = ThreadLocalRandom.current().nextInt(0x10000);
+			while (pending.get(id) != null);
+			pending.put(id, query);
+		}
+
+		int queryId = id;
+		InetSocketAddress nameserver = nameservers.get(query.attempt % nameservers.size());
+		byte[] request = request(queryId, query.name);
+		try {
+			socket.send(new DatagramPacket(request, request.length, nameserver));
+		}
+		catch (IOException e) {
+			log.debug("Unable to send a query to " + nameserver, e);
+		}
+		query.retry = timer.schedule(() -> retry(query, queryId), timeout, MILLISECONDS);
+	}
+
+	private void retry(Query query, int id) {
+		synchronized (pending) {
+			pending.remove(id, query);
+		}
+		if (query.future.isDone()) return;
+		if (++query.attempt > retries) {
+			// don't cache timeouts, the nameserver may just be busy
+			complete(query, null, -1);
+		}
+		else send(query);
+	}
+
+	private void complete(Query query, String hostname, long ttlSeconds) {
+		if (ttlSeconds >= 0)
+			cache.put(query.name, new CachedAnswer(hostname, System.nanoTime() + ttlSeconds * 1_000_000_000L));
+		inFlight.remove(query.name, query);
+		ScheduledFuture<?> retry = query.retry;
+		if (retry != null) retry.cancel(false);
+		query.future.complete(hostname);
+	}
+
+	private void receive() {
+		byte[] data = new byte[1500];
+		DatagramPacket packet = new DatagramPacket(data, data.length);
+		while (!socket.isClosed()) {
+			try {
+				packet.setLength(data.length);
+				socket.receive(packet);
+				if (!nameservers.contains(packet.getSocketAddress())) continue;
+				handleResponse(data, packet.getLength());
+			}
+			catch (IOException e) {
+				if (!socket.isClosed()) log.warn("Unable to receive a DNS response", e);
+			}
+			catch (RuntimeException e) {
+				log.debug("Malformed DNS response", e);
+			}
+		}
+	}
+
+	private void handleResponse(byte[] data, int length) {
+		if (length < 12 || (data[2] & 0x80) == 0) return;
+		int id = u16(data, 0);
+		Query query;
+		synchronized (pending) {
+			query = pending.get(id);
+			// the question must match, otherwise the response is either late or spoofed
+			if (query == null || u16(data, 4) != 1 || !query.name.equalsIgnoreCase(decodeName(data, 12))) return;
+			pending.remove(id, query);
+		}
+
+		int rcode = data[3] & 0xF;
+		if (rcode != RCODE_OK && rcode != RCODE_NXDOMAIN) {
+			// e.g. SERVFAIL or REFUSED, try the next nameserver right away
+			ScheduledFuture<?> retry = query.retry;
+			if (retry != null && retry.cancel(false)) timer.execute(() -> retry(query, id));
+			return;
+		}
+
+		int answers = u16(data, 6);
+		int authorities = u16(data, 8);
+		int offset = skipName(data, 12) + 4;
+		long negativeTTL = DEFAULT_NEGATIVE_TTL;
+		for (int i = 0; i < answers + authorities; i++) {
+			offset = skipName(data, offset);
+			int type = u16(data, offset);
+			int recordClass = u16(data, offset + 2);
+			long ttl = u32(data, offset + 4);
+			int dataLength = u16(data, offset + 8);
+			int dataOffset = offset + 10;
+			offset = dataOffset + dataLength;
+			if (offset > length || recordClass != CLASS_IN) continue;
+
+			if (i < answers && type == TYPE_PTR) {
+				complete(query, decodeName(data, dataOffset), ttl);
+				return;
+			}
+			if (i >= answers && type == TYPE_SOA) {
+				// RFC 2308: negative answers are cached for the minimum of SOA TTL and its MINIMUM field
+				negativeTTL = Math.min(ttl, u32(data, offset - 4));
+			}
+		}
+		complete(query, null, negativeTTL);
+	}
+
+	static String reverseName(byte[] address) {
+		StringBuilder name = new StringBuilder(address.length == 4 ? 29 : 73);
+		for (int i = address.length - 1; i >= 0; i--) {
+			if (address.length == 4) name.append(address[i] & 0xFF).append('.');
+			else name.append(Character.forDigit(address[i] & 0xF, 16)).append('.').append(Character.forDigit((address[i] >> 4) & 0xF, 16)).append('.');
+		}
+		return name.append(address.length == 4 ? "in-addr.arpa" : "ip6.arpa").toString();
+	}
+
+	static byte[] request(int id, String name) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+		// recursion desired, one question
+		out.writeBytes(new byte[] {(byte) (id >> 8), (byte) id, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+		for (String label : name.split("\\.")) {
+			byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+			out.write(bytes.length);
+			out.writeBytes(bytes);
+		}
+		out.writeBytes(new byte[] {0, 0, TYPE_PTR, 0, CLASS_IN});
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a possibly compressed name, without the trailing dot
+	 */
+	static String decodeName(byte[] data, int offset) {
+		StringBuilder name = new StringBuilder();
+		for (int jumps = 0; jumps < 16; ) {
+			int length = data[offset] & 0xFF;
+			if ((length & 0xC0) == 0xC0) {
+				offset = (length & 0x3F) << 8 | data[offset + 1] & 0xFF;
+				jumps++;
+				continue;
+			}
+			if (length == 0) break;
+			if (!name.isEmpty()) name.append('.');
+			name.append(new String(data, offset + 1, length, StandardCharsets.UTF_8));
+			offset += length + 1;
+		}
+		return name.toString();
+	}
+
+	static int skipName(byte[] data, int offset) {
+		while (true) {
+			int length = data[offset] & 0xFF;
+			if ((length & 0xC0) == 0xC0) return offset + 2;
+			if (length == 0) return offset + 1;
+			offset += length + 1;
+		}
+	}
+
+	private static int u16(byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+	}
+
+	private static long u32(byte[] data, int offset) {
+		return (long) u16(data, offset) << 16 | u16(data, offset + 2);
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+		timer.shutdownNow();
+		for (Query query : inFlight.values()) query.future.complete(null);
+		inFlight.clear();
+	}
+
+	private static class Query {
+		final String name;
+		final CompletableFuture<String> future = new CompletableFuture<>();
+		/** modified only by the sending thread and then by the timer thread */
+		volatile int attempt;
+		volatile ScheduledFuture<?> retry;
+
+		Query(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class CachedAnswer {
+		final String hostname;
+		final long expiresAt;
+
+		CachedAnswer(String hostname, long expiresAt) {
+			this.hostname = hostname;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+
+package net.azib.ipscan.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * IndexPermutation - a pseudo-random permutation of indexes in [0, size) that doesn't need any memory.
+ * A small Feistel network shuffles the bits of the position, and the result is re-shuffled (cycle walking)
+ * until it falls into the range, so every index is returned for exactly one position.
+ */
+public class IndexPermutation {
+	private static final int ROUNDS = 4;
+
+	private final long size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] keys = new long[ROUNDS];
+
+	public IndexPermutation(long size, long seed) {
+		if (size <= 0) throw new IllegalArgumentException("Size must be positive: " + size);
+		this.size = size;
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 1));
+		this.halfBits = (bits + 1) / 2;
+		this.halfMask = (1L << halfBits) - 1;
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int i = 0; i < ROUNDS; i++) keys[i] = random.nextLong();
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @param position in [0, size)
+	 * @return the index at the specified position
+	 */
+	public long get(long position) {
+		if (position < 0 || position >= size) throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+		long index = position;
+		do {
+			index = encrypt(index);
+		}
+		while (index >= size);
+		return index;
+	}
+
+	private long encrypt(long value) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (long key : keys) {
+			long next = left ^ (mix(right ^ key) & halfMask);
+			left = right;
+			right = next;
+		}
+		return (left << halfBits) | right;
+	}
+
+	/** splitmix64 finalizer, a good and fast bit mixer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -56,7 +56,8 @@ public class InetAddressUtils {
 						break;
 					}
 				} else {
-					if (--newAddress[i] != 0x00) {
+					// borrow from the previous byte only if this one wraps around
+					if (--newAddress[i] != (byte) 0xFF) {
 						break;
 					}
 				}
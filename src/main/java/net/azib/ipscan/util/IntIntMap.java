@@ -0,0 +1,90 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+
+package net.azib.ipscan.util;
+
+import java.util.Arrays;
+
+/**
+ * IntIntMap - a hash map with primitive int keys and non-negative int values, e.g. IPv4 addresses to indexes.
+ * Uses open addressing with linear probing, entries can't be removed one by one.
+ * Not thread-safe.
+ */
+public class IntIntMap {
+	public static final int NOT_FOUND = -1;
+
+	private int[] keys;
+	/** values are stored incremented by one, so that zero means an empty slot */
+	private int[] values;
+	private int size;
+
+	public IntIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		keys = new int[capacity];
+		values = new int[capacity];
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the value or {@link #NOT_FOUND}
+	 */
+	public int get(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) return values[i] - 1;
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * @param value must be non-negative
+	 * @return the previous value or {@link #NOT_FOUND}
+	 */
+	public int put(int key, int value) {
+		if (value < 0) throw new IllegalArgumentException("Negative value: " + value);
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				int old = values[i] - 1;
+				values[i] = value + 1;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value + 1;
+		if (++size * 2 > keys.length) resize(keys.length * 2);
+		return NOT_FOUND;
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == 0) continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (values[i] != 0) i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(values, 0);
+		size = 0;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+
+package net.azib.ipscan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * IntObjectMap - a hash map with primitive int keys, e.g. IPv4 addresses.
+ * Keys are not boxed and lookups don't allocate anything.
+ * Uses open addressing with linear probing, null values are not supported.
+ * Not thread-safe.
+ */
+public class IntObjectMap<V> {
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public IntObjectMap() {
+		this(16);
+	}
+
+	public IntObjectMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		keys = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int indexOf(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) return i;
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) values[i];
+	}
+
+	public boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return the previous value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		Objects.requireNonNull(value);
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length) resize(keys.length * 2);
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = indexOf(key);
+		if (i < 0) return null;
+		V old = (V) values[i];
+		removeAt(i);
+		return old;
+	}
+
+	/**
+	 * Removes the key only if it is currently mapped to the specified value (compared by identity).
+	 */
+	public boolean remove(int key, V value) {
+		int i = indexOf(key);
+		if (i < 0 || values[i] != value) return false;
+		removeAt(i);
+		return true;
+	}
+
+	private void removeAt(int i) {
+		int mask = keys.length - 1;
+		values[i] = null;
+		size--;
+		// shift back following entries of the same cluster, so that lookups don't stop at the hole
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == null) continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (values[i] != null) i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return a snapshot of all the values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> result = new ArrayList<>(size);
+		for (Object value : values) {
+			if (value != null) result.add((V) value);
+		}
+		return result;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+}
@@ -2,83 +2,182 @@ package net.azib.ipscan.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.log4j.Log4j2;
 
-public class MDNSResolver implements Closeable {
-	InetAddress mdnsIP = InetAddress.getByName("224.0.0.251");
-	MulticastSocket socket = new MulticastSocket();
+/**
+ * Multicast DNS resolver, shared by all the scanning threads during a scan.
+ * A single socket sends PTR queries for all the addresses, a receiver thread passes the answers to the waiting threads.
+ * Unsolicited announcements received during the scan are remembered as well, so many hosts never need to be queried.
+ */
+@Log4j2
+public final class MDNSResolver implements Closeable {
+	private static final int MDNS_PORT = 5353;
+	private static final InetSocketAddress MDNS_GROUP = new InetSocketAddress("224.0.0.251", MDNS_PORT);
+	private static final int TYPE_A = 1;
+	private static final int TYPE_PTR = 12;
+	private static final int TYPE_AAAA = 28;
+	/** class IN with the unicast-response bit */
+	private static final int CLASS_IN_QU = 0x8001;
 
-	public MDNSResolver(int timeout) throws IOException {
-		socket.setSoTimeout(timeout);
-		socket.setTimeToLive(1);
-		// TODO: iPhones respond only back to the multicast address and port 5353 provided requestId == 0
-		// socket.joinGroup(mdnsIP);
+	private final MulticastSocket socket;
+	private final RateLimiter packetRateLimiter;
+	private final Thread receiverThread;
+	/** hostnames by reverse names (like 1.0.168.192.in-addr.arpa), both from answers and announcements */
+	private final Map<String, String> hostnames = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<String>> waiting = new ConcurrentHashMap<>();
+
+	public MDNSResolver(RateLimiter packetRateLimiter) throws IOException {
+		this.packetRateLimiter = packetRateLimiter;
+		socket = openSocket();
+		socket.setTimeToLive(255);
+		// started only after all the fields are set
+		receiverThread = new Thread(this::receive, "mDNS receiver");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
 	}
 
-	void writeName(DataOutputStream out, String name) throws IOException {
-		int s = 0, e;
-		while ((e = name.indexOf('.', s)) != -1) {
-			out.writeByte(e - s);
-			out.write(name.substring(s, e).getBytes());
-			s = e + 1;
+	private static MulticastSocket openSocket() throws IOException {
+		MulticastSocket socket = new MulticastSocket(null);
+		try {
+			// some devices, e.g. iPhones, respond only to the mDNS port, which also receives announcements
+			socket.setReuseAddress(true);
+			socket.bind(new InetSocketAddress(MDNS_PORT));
+			socket.joinGroup(MDNS_GROUP, null);
+			return socket;
+		}
+		catch (IOException e) {
+			socket.close();
+			log.info("Unable to listen on the mDNS port, only unicast responses will be received: " + e);
+			return new MulticastSocket();
 		}
-		out.write(name.length() - s);
-		out.write(name.substring(s).getBytes());
-		out.writeByte(0);
 	}
 
-	String decodeName(byte[] data, int offset, int length) {
-		StringBuilder s = new StringBuilder(length);
-		for (int i = offset; i < offset + length; i++) {
-			byte len = data[i];
-			if (len == 0) break;
-			s.append(new String(data, i + 1, len)).append('.');
-			i += len;
+	/**
+	 * Blocks until the answer or the timeout.
+	 * @return the hostname or null if there is none
+	 */
+	public String resolve(InetAddress ip, int timeout) throws IOException, InterruptedException {
+		String name = DNSResolver.reverseName(ip.getAddress());
+		String hostname = hostnames.get(name);
+		if (hostname != null) return hostname;
+
+		CompletableFuture<String> future = new CompletableFuture<>();
+		CompletableFuture<String> existing = waiting.putIfAbsent(name, future);
+		try {
+			if (existing == null) {
+				// the answer might have arrived just before the registration
+				hostname = hostnames.get(name);
+				if (hostname != null) future.complete(hostname);
+				else send(name);
+			}
+			else future = existing;
+
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException | ExecutionException e) {
+			return null;
+		}
+		finally {
+			if (existing == null) waiting.remove(name, future);
 		}
-		s.setLength(s.length() - 1);
-		return s.toString();
 	}
 
-	byte[] dnsRequest(int id, String name) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		DataOutputStream out = new DataOutputStream(baos);
-		out.writeShort(id);
-		out.write(new byte[] {0, 0, 0, 1, 0, 0, 0, 0, 0, 0});
-		writeName(out, name);
-		out.write(new byte[] {0, 0xc, 0, 1});
-		return baos.toByteArray();
+	private void send(String name) throws IOException, InterruptedException {
+		packetRateLimiter.acquire();
+		byte[] request = request(name);
+		socket.send(new DatagramPacket(request, request.length, MDNS_GROUP));
 	}
 
-	String reverseName(byte[] addr) {
-		// note: only IPv4 is supported here
-		return (addr[3]&0xFF) + "." + (addr[2]&0xFF) + "." + (addr[1]&0xFF) + "." + (addr[0]&0xFF) + ".in-addr.arpa";
+	static byte[] request(String name) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+		// mDNS queries have zero IDs, one question
+		out.writeBytes(new byte[] {0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+		for (String label : name.split("\\.")) {
+			byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+			out.write(bytes.length);
+			out.writeBytes(bytes);
+		}
+		out.writeBytes(new byte[] {0, 0, TYPE_PTR, (byte) (CLASS_IN_QU >> 8), (byte) CLASS_IN_QU});
+		return out.toByteArray();
 	}
 
-	public String resolve(InetAddress ip) throws IOException {
-		byte[] addr = ip.getAddress();
-		int requestId = addr[2] * 0xFF + addr[3];
-		byte[] request = dnsRequest(requestId, reverseName(addr));
-		int mdnsPort = 5353;
-		socket.send(new DatagramPacket(request, request.length, mdnsIP, mdnsPort));
-
-		DatagramPacket respPacket = new DatagramPacket(new byte[512], 512);
-		socket.receive(respPacket);
-		byte[] response = respPacket.getData();
-		if (response[0] != request[0] && response[1] != request[1]) return null;
-		int numQueries = response[5];
-		int offset = (numQueries == 0 ? 12 : request.length) + 2 + 2 + 2 + 4 + 2;
-		return decodeName(response, offset, respPacket.getLength() - offset);
+	private void receive() {
+		byte[] data = new byte[9000];
+		DatagramPacket packet = new DatagramPacket(data, data.length);
+		while (!socket.isClosed()) {
+			try {
+				packet.setLength(data.length);
+				socket.receive(packet);
+				handleResponse(data, packet.getLength());
+			}
+			catch (IOException e) {
+				if (!socket.isClosed()) log.warn("Unable to receive an mDNS response", e);
+			}
+			catch (RuntimeException e) {
+				log.debug("Malformed mDNS response", e);
+			}
+		}
 	}
 
-	public void close() {
-		socket.close();
+	/**
+	 * Takes hostnames from all the records of a response or an announcement: PTR records of reverse names
+	 * and A/AAAA records of hostnames.
+	 */
+	void handleResponse(byte[] data, int length) {
+		// queries of other hosts
+		if (length < 12 || (data[2] & 0x80) == 0) return;
+
+		int questions = u16(data, 4);
+		int records = u16(data, 6) + u16(data, 8) + u16(data, 10);
+		int offset = 12;
+		for (int i = 0; i < questions; i++) offset = DNSResolver.skipName(data, offset) + 4;
+
+		for (int i = 0; i < records && offset < length; i++) {
+			String name = DNSResolver.decodeName(data, offset);
+			offset = DNSResolver.skipName(data, offset);
+			int type = u16(data, offset);
+			long ttl = (long) u16(data, offset + 4) << 16 | u16(data, offset + 6);
+			int dataLength = u16(data, offset + 8);
+			int dataOffset = offset + 10;
+			offset = dataOffset + dataLength;
+			// zero TTL means goodbye
+			if (offset > length || ttl == 0) continue;
+
+			if (type == TYPE_PTR && (name.endsWith(".in-addr.arpa") || name.endsWith(".ip6.arpa")))
+				found(name, DNSResolver.decodeName(data, dataOffset), true);
+			else if (type == TYPE_A && dataLength == 4 || type == TYPE_AAAA && dataLength == 16)
+				found(DNSResolver.reverseName(Arrays.copyOfRange(data, dataOffset, offset)), name, false);
+		}
+	}
+
+	private void found(String reverseName, String hostname, boolean isPTR) {
+		String lowerCaseName = reverseName.toLowerCase();
+		// PTR records are preferred, hosts may have several names
+		if (isPTR) hostnames.put(lowerCaseName, hostname);
+		else hostnames.putIfAbsent(lowerCaseName, hostname);
+
+		CompletableFuture<String> future = waiting.get(lowerCaseName);
+		if (future != null) future.complete(hostnames.get(lowerCaseName));
+	}
+
+	private static int u16(byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
 	}
 
-	public static void main(String[] args) throws IOException {
-		System.out.println(new MDNSResolver(2000).resolve(InetAddress.getByName("192.168.0.1")));
+	public void close() {
+		socket.close();
 	}
 }
@@ -1,12 +1,23 @@
 package net.azib.ipscan.util;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Resolves NetBIOS names with NBSTAT requests.
+ * A single socket is used for all the requests, responses are matched by transaction IDs and addresses.
+ */
+@Log4j2
 public class NetBIOSResolver implements Closeable {
 	private static final int NETBIOS_UDP_PORT = 137;
 	private static final byte[] REQUEST_DATA = {(byte)0xA2, 0x48, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x20, 0x43, 0x4b, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x41, 0x00, 0x00, 0x21, 0x00, 0x01};
@@ -21,25 +32,93 @@ public class NetBIOSResolver implements Closeable {
 	private static final int NAME_TYPE_DOMAIN = 0x00;
 	private static final int NAME_TYPE_MESSENGER = 0x03;
 
-	DatagramSocket socket = new DatagramSocket();
+	private final DatagramSocket socket = new DatagramSocket();
+	private final Thread receiverThread = new Thread(this::receive, "NetBIOS receiver");
+	/** requests waiting for responses by transaction IDs, synchronized on itself */
+	private final IntObjectMap<Request> pending = new IntObjectMap<>();
+	private int nextTransactionId = ThreadLocalRandom.current().nextInt(0x10000);
+
+	/**
+	 * Opens a socket, which is shared by all the requests until closed
+	 */
+	public NetBIOSResolver() throws SocketException {
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+	}
 
-	public NetBIOSResolver(int timeout) throws SocketException {
-		socket.setSoTimeout(timeout);
+	/**
+	 * @return computer name, user name, group name and MAC address, or null if there is no response
+	 */
+	public String[] resolve(InetAddress ip, int timeout) throws IOException, InterruptedException {
+		try {
+			return resolveAsync(ip, timeout).get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			return null;
+		}
 	}
 
-	public String[] resolve(InetAddress ip) throws IOException {
-		socket.send(new DatagramPacket(REQUEST_DATA, REQUEST_DATA.length, ip, NETBIOS_UDP_PORT));
+	/**
+	 * Sends a NBSTAT request with a distinct transaction ID, the response is received by the shared receiver.
+	 * @return the future names, see {@link #resolve(InetAddress, int)}
+	 */
+	public CompletableFuture<String[]> resolveAsync(InetAddress ip, int timeout) throws IOException {
+		Request request = new Request(ip);
+		int transactionId;
+		synchronized (pending) {
+			do transactionId = nextTransactionId++ & 0xFFFF;
+			while (pending.get(transactionId) != null);
+			pending.put(transactionId, request);
+		}
+		int id = transactionId;
+		request.future.completeOnTimeout(null, timeout, MILLISECONDS).whenComplete((names, e) -> {
+			synchronized (pending) {
+				pending.remove(id, request);
+			}
+		});
+
+		byte[] data = REQUEST_DATA.clone();
+		data[0] = (byte) (id >> 8);
+		data[1] = (byte) id;
+		try {
+			socket.send(new DatagramPacket(data, data.length, ip, NETBIOS_UDP_PORT));
+		}
+		catch (IOException e) {
+			request.future.completeExceptionally(e);
+		}
+		return request.future;
+	}
 
+	private void receive() {
 		byte[] response = new byte[1024];
 		DatagramPacket responsePacket = new DatagramPacket(response, response.length);
-		socket.receive(responsePacket);
+		while (!socket.isClosed()) {
+			try {
+				responsePacket.setLength(response.length);
+				socket.receive(responsePacket);
+				int id = (response[0] & 0xFF) << 8 | response[1] & 0xFF;
+				Request request;
+				synchronized (pending) {
+					request = pending.get(id);
+				}
+				if (request == null || !request.ip.equals(responsePacket.getAddress())) continue;
+				request.future.complete(parseResponse(response, responsePacket.getLength()));
+			}
+			catch (IOException e) {
+				// e.g. PortUnreachableException caused by a previous request
+				if (!socket.isClosed()) log.debug("Unable to receive a NetBIOS response", e);
+			}
+		}
+	}
 
-		if (responsePacket.getLength() < RESPONSE_BASE_LEN || response[RESPONSE_TYPE_POS] != RESPONSE_TYPE_NBSTAT) {
+	static String[] parseResponse(byte[] response, int length) {
+		if (length < RESPONSE_BASE_LEN || response[RESPONSE_TYPE_POS] != RESPONSE_TYPE_NBSTAT) {
 			return null; // response was too short - no names returned
 		}
 
 		int nameCount = response[RESPONSE_BASE_LEN - 1] & 0xFF;
-		if (responsePacket.getLength() < RESPONSE_BASE_LEN + RESPONSE_NAME_BLOCK_LEN * nameCount) {
+		if (length < RESPONSE_BASE_LEN + RESPONSE_NAME_BLOCK_LEN * nameCount) {
 			return null; // data was truncated or something is wrong
 		}
 
@@ -94,5 +173,18 @@ public class NetBIOSResolver implements Closeable {
 
 	public void close() {
 		socket.close();
+		synchronized (pending) {
+			for (Request request : pending.values()) request.future.complete(null);
+			pending.clear();
+		}
+	}
+
+	private static class Request {
+		final InetAddress ip;
+		final CompletableFuture<String[]> future = new CompletableFuture<>();
+
+		Request(InetAddress ip) {
+			this.ip = ip;
+		}
 	}
 }
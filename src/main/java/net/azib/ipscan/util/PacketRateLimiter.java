@@ -0,0 +1,148 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scan-wide limiter of probe packets per second, shared by pingers, port scanners and UDP resolvers.
+ * <p>
+ * If adaptation is enabled, the rate is controlled by AIMD, like TCP congestion control:
+ * it is halved when alive hosts start losing replies or their round trip times grow well above the
+ * lowest seen, and otherwise raised by a constant step after each measurement window.
+ * Hosts that don't reply at all are not a signal, most of the scanned addresses are usually unused.
+ */
+public class PacketRateLimiter extends RateLimiter {
+	/** the starting rate of adaptation if the max rate is unlimited */
+	private static final int DEFAULT_ADAPTIVE_RATE = 1000;
+	private static final int MIN_RATE = 10;
+	private static final long WINDOW_NANOS = MILLISECONDS.toNanos(500);
+	/** replies of a window below this don't say much */
+	private static final int MIN_WINDOW_PACKETS = 20;
+	private static final double MAX_LOSS = 0.05;
+	/** round trip times above the baseline times this factor mean queueing somewhere */
+	private static final int MAX_RTT_FACTOR = 2;
+	/** millisecond times are too coarse for fast networks, jitter below this is ignored, ms */
+	private static final int RTT_SLACK = 10;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LongAdder packetsSent = new LongAdder();
+	private volatile boolean adaptive;
+	/** 0 means unlimited */
+	private int maxRate;
+	private int increaseStep;
+
+	private long windowStart = System.nanoTime();
+	private int windowPackets;
+	private int windowReplies;
+	private long windowTimeSum;
+	/** the lowest average round trip time of a window, ms */
+	private long baselineTime;
+
+	private long lastSentCount;
+	private long lastSentTime = System.nanoTime();
+	private double sendingRate;
+
+	public PacketRateLimiter() {
+		super(0);
+	}
+
+	/**
+	 * Prepares the limiter for a new scan.
+	 * @param maxPacketsPerSecond 0 means unlimited
+	 * @param adaptive whether to adapt the rate to the replies
+	 */
+	public void reset(int maxPacketsPerSecond, boolean adaptive) {
+		lock.lock();
+		try {
+			this.adaptive = adaptive;
+			this.maxRate = maxPacketsPerSecond;
+			int startRate = adaptive && maxPacketsPerSecond == 0 ? DEFAULT_ADAPTIVE_RATE : maxPacketsPerSecond;
+			this.increaseStep = Math.max(MIN_RATE, startRate / 20);
+			setRate(startRate);
+			windowStart = System.nanoTime();
+			windowPackets = windowReplies = 0;
+			windowTimeSum = baselineTime = 0;
+			lastSentCount = packetsSent.sum();
+			lastSentTime = System.nanoTime();
+			sendingRate = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reserves the next probe packet, {@link #acquire} blocks until it may be sent
+	 */
+	@Override
+	public long reserve() {
+		packetsSent.increment();
+		return super.reserve();
+	}
+
+	/**
+	 * Feeds the controller with the outcome of probing of a host, which has replied at least once.
+	 * @param packets number of probes sent to the host
+	 * @param replies number of replies received
+	 * @param averageTime average round trip time, ms
+	 */
+	public void onReplies(int packets, int replies, int averageTime) {
+		if (!adaptive || replies == 0) return;
+		lock.lock();
+		try {
+			windowPackets += packets;
+			windowReplies += replies;
+			windowTimeSum += (long) averageTime * replies;
+
+			long now = System.nanoTime();
+			if (now - windowStart < WINDOW_NANOS || windowPackets < MIN_WINDOW_PACKETS) return;
+
+			double loss = 1 - (double) windowReplies / windowPackets;
+			long time = windowTimeSum / windowReplies;
+			if (baselineTime == 0 || time < baselineTime) baselineTime = time;
+
+			double rate = getRate();
+			if (loss > MAX_LOSS || time > baselineTime * MAX_RTT_FACTOR + RTT_SLACK)
+				rate = Math.max(MIN_RATE, rate / 2);
+			else
+				rate = maxRate > 0 ? Math.min(maxRate, rate + increaseStep) : rate + increaseStep;
+			setRate(rate);
+
+			windowStart = now;
+			windowPackets = windowReplies = 0;
+			windowTimeSum = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return packets actually sent per second since the previous call
+	 */
+	public double getSendingRate() {
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			// calls closer than this would give jumpy numbers
+			if (now - lastSentTime >= MILLISECONDS.toNanos(200)) {
+				long count = packetsSent.sum();
+				sendingRate = (count - lastSentCount) * (double) SECONDS.toNanos(1) / (now - lastSentTime);
+				lastSentCount = count;
+				lastSentTime = now;
+			}
+			return sendingRate;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
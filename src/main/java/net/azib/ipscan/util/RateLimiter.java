@@ -0,0 +1,89 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package net.azib.ipscan.util;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket rate limiter, safe to share among threads.
+ * Each permit is scheduled one interval after the previous one, while permits unused during
+ * an idle period may be taken at once, up to a burst of {@link #BURST_NANOS} worth of permits.
+ */
+public class RateLimiter {
+	private static final long BURST_NANOS = 100_000_000L;
+
+	/** the lock is never held while sleeping, it doesn't pin virtual threads */
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile double permitsPerSecond;
+	private long intervalNanos;
+	/** time when the next permit becomes available */
+	private long nextFreeTime = System.nanoTime();
+
+	/**
+	 * @param permitsPerSecond 0 means unlimited
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		// not calling setRate, which may be overridden
+		this.permitsPerSecond = permitsPerSecond;
+		this.intervalNanos = toIntervalNanos(permitsPerSecond);
+	}
+
+	private static long toIntervalNanos(double permitsPerSecond) {
+		return permitsPerSecond > 0 ? (long) (SECONDS.toNanos(1) / permitsPerSecond) : 0;
+	}
+
+	/**
+	 * @param permitsPerSecond 0 means unlimited
+	 */
+	public void setRate(double permitsPerSecond) {
+		lock.lock();
+		try {
+			this.permitsPerSecond = permitsPerSecond;
+			this.intervalNanos = toIntervalNanos(permitsPerSecond);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return permits per second, 0 if unlimited
+	 */
+	public double getRate() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * Blocks until a permit is available
+	 */
+	public void acquire() throws InterruptedException {
+		long delay = reserve();
+		if (delay > 0) NANOSECONDS.sleep(delay);
+	}
+
+	/**
+	 * Reserves a permit without blocking, for callers that have something to do while waiting
+	 * @return nanoseconds to wait for the reserved permit
+	 */
+	public long reserve() {
+		lock.lock();
+		try {
+			if (intervalNanos == 0) return 0;
+			long now = System.nanoTime();
+			// permits not taken while idle can be used at once, but only up to the burst
+			if (now - nextFreeTime > BURST_NANOS) nextFreeTime = now - BURST_NANOS;
+			long delay = nextFreeTime - now;
+			nextFreeTime += intervalNanos;
+			return delay;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
@@ -22,6 +22,14 @@ public class ThreadResourceBinder<T> {
     resources.clear();
   }
 
+  /**
+   * Closes the resource bound to the thread, if any
+   */
+  public void close(Thread thread) {
+    T resource = resources.remove(thread.getId());
+    if (resource != null) close(resource);
+  }
+
   private void close(T resource) {
     if (resource instanceof DatagramSocket) closeQuietly((DatagramSocket) resource);
     else if (resource instanceof Socket) closeQuietly((Socket) resource);
@@ -29,6 +29,14 @@ public class IPScanResultConsolePlugin implements ConsolePluginTable<IpAddressPl
   private final @Getter @Accessors(fluent = true) Context context;
   private final IPScannerService ipScannerService;
 
+  /** models of all the results in order of scanning, only changed results are rebuilt */
+  private final List<IpAddressPluginModel> models = new ArrayList<>();
+  private int resultsGeneration = -1;
+  /** incremented whenever the models change */
+  private long modelsVersion;
+  /** the models version that was last pushed to the console */
+  private long pushedVersion;
+
   @Override
   public int order() {
     return 2000;
@@ -40,18 +48,62 @@ public class IPScanResultConsolePlugin implements ConsolePluginTable<IpAddressPl
   }
 
   @Override
-  public Collection<IpAddressPluginModel> getValue() {
-    List<IpAddressPluginModel> list = new ArrayList<>();
+  public synchronized Collection<IpAddressPluginModel> getValue() {
+    refreshModels();
+    List<IpAddressPluginModel> list = new ArrayList<>(models.size());
     boolean showDeadHosts = ipScannerService.getScannerConfig().scanDeadHosts;
-    for (IPScannerService.ResultValue resultValue : ipScannerService.getIpScannerContext().getScanningResults()) {
-      if (showDeadHosts || resultValue.type != ScanningResult.ResultType.DEAD) {
-        list.add(new IpAddressPluginModel(resultValue));
+    // the latest results first
+    for (int i = models.size() - 1; i >= 0; i--) {
+      IpAddressPluginModel model = models.get(i);
+      if (model != null && (showDeadHosts || model.resultType != ScanningResult.ResultType.DEAD)) {
+        list.add(model);
       }
     }
 
     return list;
   }
 
+  /**
+   * Tells whether the models have changed since the previous call, so they need to be pushed to the console.
+   * Unlike {@link #getValue()}, which may be called by the console at any time, this is meant for the push path only.
+   *
+   * @return true if anything has changed
+   */
+  public synchronized boolean takeChangesToPush() {
+    refreshModels();
+    boolean changed = modelsVersion != pushedVersion;
+    pushedVersion = modelsVersion;
+    return changed;
+  }
+
+  /**
+   * Rebuilds models of the results that were added or updated since the previous call.
+   * All the models are rebuilt only when a new scan has started.
+   */
+  private void refreshModels() {
+    boolean[] changed = {false};
+    resultsGeneration = ipScannerService.getIpScannerContext().consumeChangedResults(resultsGeneration,
+        new IPScannerService.ResultChangeConsumer() {
+          @Override
+          public void reset() {
+            models.clear();
+            changed[0] = true;
+          }
+
+          @Override
+          public void changed(int row, IPScannerService.ResultValue value) {
+            while (models.size() <= row) {
+              models.add(null);
+            }
+            models.set(row, new IpAddressPluginModel(value));
+            changed[0] = true;
+          }
+        });
+    if (changed[0]) {
+      modelsVersion++;
+    }
+  }
+
   @Override
   public Map<String, Class<? extends ConsoleHeaderSettingPlugin<?>>> getHeaderActions() {
     return Map.of(
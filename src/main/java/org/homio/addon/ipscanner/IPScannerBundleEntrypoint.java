@@ -2,6 +2,7 @@ package org.homio.addon.ipscanner;
 
 import static org.homio.addon.ipscanner.IPScanResultConsolePlugin.PLUGIN_NAME;
 
+import java.io.File;
 import java.time.Duration;
 import java.util.List;
 import java.util.Set;
@@ -86,11 +87,16 @@ public class IPScannerBundleEntrypoint implements AddonEntrypoint {
                      }
                    })
                    .execute(progressBar -> {
-                     ipScannerService.startScan(
-                         jsonObject.getString("startIP"),
-                         jsonObject.getString("endIP"),
-                         jsonObject.getString("scanPorts"),
-                         progressBar);
+                     String addressFile = jsonObject.optString("addressFile");
+                     if (addressFile.isBlank()) {
+                       ipScannerService.startScan(
+                           jsonObject.getString("startIP"),
+                           jsonObject.getString("endIP"),
+                           jsonObject.getString("scanPorts"),
+                           progressBar);
+                     } else {
+                       ipScannerService.startScan(new File(addressFile.trim()), jsonObject.getString("scanPorts"), progressBar);
+                     }
                      latch.await();
                    });
     } else {
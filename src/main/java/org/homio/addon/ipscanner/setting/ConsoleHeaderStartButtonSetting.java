@@ -34,7 +34,8 @@ public class ConsoleHeaderStartButtonSetting implements ConsoleHeaderSettingPlug
     return Arrays.asList(
         ActionInputParameter.ip("startIP", prefix + "0"),
         ActionInputParameter.ip("endIP", prefix + "255"),
-        ActionInputParameter.text("scanPorts", "80,443,8080-8084")
+        ActionInputParameter.text("scanPorts", "80,443,8080-8084"),
+        ActionInputParameter.text("addressFile", "")
     );
   }
 }
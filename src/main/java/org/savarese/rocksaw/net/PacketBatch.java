@@ -0,0 +1,200 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.rocksaw.net;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Packets for batched I/O of a {@link RawSocket} (IPv4 only), see {@link RawSocket#writeBatch} and {@link RawSocket#readBatch}.
+ * <p>
+ * Packet data, addresses and the mmsghdr/iovec structures of sendmmsg/recvmmsg live in native memory,
+ * which is allocated once and reused. Packets are accessed through direct ByteBuffers over that memory,
+ * so nothing is copied on the Java side. A batch must not be used by several threads at once.
+ */
+public class PacketBatch {
+	private static final int POINTER_SIZE = Native.POINTER_SIZE;
+	/** struct mmsghdr is struct msghdr (7 pointer-sized fields) followed by msg_len, padded */
+	private static final int MMSGHDR_SIZE = 8 * POINTER_SIZE;
+	private static final int MSG_NAMELEN_OFFSET = POINTER_SIZE;
+	private static final int MSG_IOV_OFFSET = 2 * POINTER_SIZE;
+	private static final int MSG_IOVLEN_OFFSET = 3 * POINTER_SIZE;
+	private static final int MSG_CONTROL_OFFSET = 4 * POINTER_SIZE;
+	private static final int MSG_CONTROLLEN_OFFSET = 5 * POINTER_SIZE;
+	private static final int MSG_FLAGS_OFFSET = 6 * POINTER_SIZE;
+	private static final int MSG_LEN_OFFSET = 7 * POINTER_SIZE;
+	private static final int IOVEC_SIZE = 2 * POINTER_SIZE;
+	private static final int SOCKADDR_IN_SIZE = 16;
+	private static final short AF_INET = 2;
+	/** enough for a cmsghdr with a struct timespec */
+	private static final int CONTROL_SIZE = 64;
+	/** struct cmsghdr is cmsg_len (size_t), cmsg_level and cmsg_type, its data is aligned to size_t */
+	private static final int CMSG_HEADER_SIZE = align(POINTER_SIZE + 8);
+	private static final int SOL_SOCKET = 1;
+	private static final int SCM_TIMESTAMPNS = 35;
+
+	private final int capacity;
+	private final int packetSize;
+	/** struct mmsghdr[capacity] */
+	private final Memory headers;
+	/** struct iovec[capacity] */
+	private final Memory iovecs;
+	/** struct sockaddr_in[capacity] */
+	private final Memory addresses;
+	/** control messages of received packets, null if not needed */
+	private final Memory controls;
+	private final ByteBuffer[] packets;
+
+	/**
+	 * @param capacity max number of packets in the batch
+	 * @param packetSize max size of a packet, including the IP header for reading
+	 */
+	public PacketBatch(int capacity, int packetSize) {
+		this(capacity, packetSize, false);
+	}
+
+	/**
+	 * @param capacity max number of packets in the batch
+	 * @param packetSize max size of a packet, including the IP header for reading
+	 * @param timestamps whether to receive kernel timestamps, see {@link RawSocket#setReceiveTimestampNs}
+	 */
+	public PacketBatch(int capacity, int packetSize, boolean timestamps) {
+		this.capacity = capacity;
+		this.packetSize = packetSize;
+		headers = new Memory((long) MMSGHDR_SIZE * capacity);
+		headers.clear();
+		iovecs = new Memory((long) IOVEC_SIZE * capacity);
+		addresses = new Memory((long) SOCKADDR_IN_SIZE * capacity);
+		addresses.clear();
+		controls = timestamps ? new Memory((long) CONTROL_SIZE * capacity) : null;
+		Memory data = new Memory((long) packetSize * capacity);
+		data.clear();
+		packets = new ByteBuffer[capacity];
+
+		for (int i = 0; i < capacity; i++) {
+			long header = (long) MMSGHDR_SIZE * i;
+			headers.setPointer(header, addresses.share((long) SOCKADDR_IN_SIZE * i));
+			headers.setPointer(header + MSG_IOV_OFFSET, iovecs.share((long) IOVEC_SIZE * i));
+			setSize(headers, header + MSG_IOVLEN_OFFSET, 1);
+			iovecs.setPointer((long) IOVEC_SIZE * i, data.share((long) packetSize * i));
+			addresses.setShort((long) SOCKADDR_IN_SIZE * i, AF_INET);
+			if (controls != null) headers.setPointer(header + MSG_CONTROL_OFFSET, controls.share((long) CONTROL_SIZE * i));
+			packets[i] = data.getByteBuffer((long) packetSize * i, packetSize).order(ByteOrder.BIG_ENDIAN);
+		}
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the direct buffer of the packet: its limit is the length to write,
+	 * or the length read after {@link RawSocket#readBatch}
+	 */
+	public ByteBuffer packet(int index) {
+		return packets[index];
+	}
+
+	/**
+	 * Sets the destination of the packet for writing
+	 * @param address IPv4 address as a 32-bit word
+	 */
+	public void setAddress(int index, int address) {
+		// sin_addr is in network byte order
+		addresses.setInt((long) SOCKADDR_IN_SIZE * index + 4, ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? address : Integer.reverseBytes(address));
+	}
+
+	/**
+	 * @return the source of the packet after reading, IPv4 address as a 32-bit word
+	 */
+	public int getAddress(int index) {
+		int address = addresses.getInt((long) SOCKADDR_IN_SIZE * index + 4);
+		return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? address : Integer.reverseBytes(address);
+	}
+
+	/**
+	 * @return the kernel receive timestamp of the packet after reading, ns since the epoch (CLOCK_REALTIME),
+	 * or 0 if there is none
+	 */
+	public long getTimestampNanos(int index) {
+		if (controls == null) return 0;
+		long header = (long) MMSGHDR_SIZE * index;
+		long length = getSize(headers, header + MSG_CONTROLLEN_OFFSET);
+		long control = (long) CONTROL_SIZE * index;
+		for (long offset = 0; offset + CMSG_HEADER_SIZE <= length; ) {
+			long messageLength = getSize(controls, control + offset);
+			if (messageLength < CMSG_HEADER_SIZE) break;
+			int level = controls.getInt(control + offset + POINTER_SIZE);
+			int type = controls.getInt(control + offset + POINTER_SIZE + 4);
+			// struct timespec is two native longs
+			if (level == SOL_SOCKET && type == SCM_TIMESTAMPNS && offset + CMSG_HEADER_SIZE + 2L * Native.LONG_SIZE <= length)
+				return getNativeLong(control + offset + CMSG_HEADER_SIZE) * 1_000_000_000L + getNativeLong(control + offset + CMSG_HEADER_SIZE + Native.LONG_SIZE);
+			offset += align(messageLength);
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the struct mmsghdr of the packet
+	 */
+	Pointer header(int index) {
+		return headers.share((long) MMSGHDR_SIZE * index);
+	}
+
+	/**
+	 * Sets the lengths of the packets to write to their buffer limits
+	 */
+	void prepareForWrite(int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			headers.setInt((long) MMSGHDR_SIZE * i + MSG_NAMELEN_OFFSET, SOCKADDR_IN_SIZE);
+			setSize(iovecs, (long) IOVEC_SIZE * i + POINTER_SIZE, packets[i].limit());
+		}
+	}
+
+	/**
+	 * Lets every packet receive up to the max packet size
+	 */
+	void prepareForRead() {
+		for (int i = 0; i < capacity; i++) {
+			long header = (long) MMSGHDR_SIZE * i;
+			headers.setInt(header + MSG_NAMELEN_OFFSET, SOCKADDR_IN_SIZE);
+			headers.setInt(header + MSG_FLAGS_OFFSET, 0);
+			// the kernel sets the length of the control messages it has actually written
+			if (controls != null) setSize(headers, header + MSG_CONTROLLEN_OFFSET, CONTROL_SIZE);
+			setSize(iovecs, (long) IOVEC_SIZE * i + POINTER_SIZE, packetSize);
+		}
+	}
+
+	/**
+	 * Sets the limits of the first count packets to the received lengths
+	 */
+	void received(int count) {
+		for (int i = 0; i < count; i++) {
+			packets[i].clear().limit(Math.min(headers.getInt((long) MMSGHDR_SIZE * i + MSG_LEN_OFFSET), packetSize));
+		}
+	}
+
+	private static void setSize(Memory memory, long offset, long value) {
+		if (POINTER_SIZE == 8) memory.setLong(offset, value);
+		else memory.setInt(offset, (int) value);
+	}
+
+	private static long getSize(Memory memory, long offset) {
+		return POINTER_SIZE == 8 ? memory.getLong(offset) : memory.getInt(offset) & 0xFFFFFFFFL;
+	}
+
+	private long getNativeLong(long offset) {
+		return Native.LONG_SIZE == 8 ? controls.getLong(offset) : controls.getInt(offset);
+	}
+
+	/** CMSG_ALIGN */
+	private static int align(long length) {
+		return (int) ((length + POINTER_SIZE - 1) & -POINTER_SIZE);
+	}
+}
@@ -20,10 +20,17 @@
 package org.savarese.rocksaw.net;
 
 
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import org.homio.api.util.HardwareUtils;
 
 /**
@@ -352,6 +359,117 @@ public class RawSocket {
   }
 
 
+  /**
+   * Functions of the C library for the Linux socket options and the
+   * batched I/O that librocksaw doesn't support natively.
+   */
+  private interface __LibC extends Library {
+    __LibC INSTANCE = Native.load("c", __LibC.class);
+
+    int setsockopt(int socket, int level, int name, Pointer value, int length)
+      throws LastErrorException;
+
+    int sendmmsg(int socket, Pointer msgvec, int vlen, int flags)
+      throws LastErrorException;
+
+    int recvmmsg(int socket, Pointer msgvec, int vlen, int flags,
+                 Pointer timeout)
+      throws LastErrorException;
+  }
+
+  private static final int __SOL_SOCKET     = 1;
+  private static final int __SO_ATTACH_FILTER = 26;
+  private static final int __SO_RCVBUFFORCE = 33;
+  private static final int __SO_TIMESTAMPNS = 35;
+  private static final int __SOL_RAW        = 255;
+  private static final int __ICMP_FILTER    = 1;
+
+  private void __setsockopt(int level, int name, Pointer value, int length)
+    throws SocketException
+  {
+    if(!Platform.isLinux())
+      throw new SocketException("Socket option " + name + " is only supported on Linux");
+    try {
+      __LibC.INSTANCE.setsockopt(__socket, level, name, value, length);
+    } catch(LastErrorException e) {
+      throw new SocketException(e.getMessage());
+    }
+  }
+
+  /**
+   * Sets the receive buffer size with SO_RCVBUFFORCE, which may exceed
+   * the system limit of SO_RCVBUF if the process is privileged enough,
+   * otherwise falls back to {@link #setReceiveBufferSize}.
+   * Linux only.
+   *
+   * @param size The size of the receive buffer.
+   * @exception SocketException If the option value could not be set.
+   */
+  public void setReceiveBufferSizeForce(int size) throws SocketException {
+    Memory value = new Memory(4);
+    value.setInt(0, size);
+    try {
+      __setsockopt(__SOL_SOCKET, __SO_RCVBUFFORCE, value, 4);
+    } catch(SocketException | LinkageError e) {
+      setReceiveBufferSize(size);
+    }
+  }
+
+  /**
+   * Enables SO_TIMESTAMPNS, so that the kernel attaches a nanosecond
+   * receive timestamp to every packet, available from
+   * {@link PacketBatch#getTimestampNanos} after {@link #readBatch}.
+   * Linux only.
+   *
+   * @param on Whether to timestamp received packets.
+   * @exception SocketException If the option value could not be set.
+   */
+  public void setReceiveTimestampNs(boolean on) throws SocketException {
+    Memory value = new Memory(4);
+    value.setInt(0, on ? 1 : 0);
+    __setsockopt(__SOL_SOCKET, __SO_TIMESTAMPNS, value, 4);
+  }
+
+  /**
+   * Sets the ICMP_FILTER option of a raw ICMP socket, so that the kernel
+   * drops all the other ICMP types before they are copied to userspace.
+   * Linux only.
+   *
+   * @param types Bit mask of the ICMP types to receive,
+   *              e.g. 1 << ICMPPacket.TYPE_ECHO_REPLY.
+   * @exception SocketException If the option value could not be set.
+   */
+  public void setICMPFilter(int types) throws SocketException {
+    Memory value = new Memory(4);
+    // the kernel expects the mask of the types to drop
+    value.setInt(0, ~types);
+    __setsockopt(__SOL_RAW, __ICMP_FILTER, value, 4);
+  }
+
+  /**
+   * Attaches a classic BPF program to the socket (SO_ATTACH_FILTER),
+   * so that only the packets it accepts are received.
+   * Linux only.
+   *
+   * @param program The instructions, each as {code, jt, jf, k}.
+   * @exception SocketException If the filter could not be attached.
+   */
+  public void attachFilter(int[][] program) throws SocketException {
+    Memory filter = new Memory(8L * program.length);
+    for(int i = 0; i < program.length; i++) {
+      filter.setShort(8L * i, (short)program[i][0]);
+      filter.setByte(8L * i + 2, (byte)program[i][1]);
+      filter.setByte(8L * i + 3, (byte)program[i][2]);
+      filter.setInt(8L * i + 4, program[i][3]);
+    }
+    // struct sock_fprog, the pointer is aligned after the length
+    Memory fprog = new Memory(2L * Native.POINTER_SIZE);
+    fprog.setShort(0, (short)program.length);
+    fprog.setPointer(Native.POINTER_SIZE, filter);
+    __setsockopt(__SOL_SOCKET, __SO_ATTACH_FILTER, fprog, (int)fprog.size());
+  }
+
+
   private native static int __getReceiveBufferSize(int socket);
 
   /**
@@ -564,6 +682,45 @@ public class RawSocket {
   }
 
 
+  /** Returned by {@link #tryRead} if the read operation times out. */
+  public static final int TIMED_OUT = -1;
+
+  /**
+   * Same as {@link #read(InetAddress, byte[], int, int)}, but returns
+   * {@link #TIMED_OUT} instead of throwing an exception if the read
+   * operation times out.  Doesn't allocate anything, so it is suitable
+   * for tight receive loops.
+   *
+   * @param address A reusable buffer for the address, 4 bytes for IPv4.
+   * @exception IOException If an I/O error occurs.
+   * @return The number of bytes read or {@link #TIMED_OUT}.
+   */
+  public int tryRead(byte[] address, byte[] data, int offset, int length)
+    throws IllegalArgumentException, IOException
+  {
+    if(offset < 0 || length < 0 || length > data.length - offset)
+      throw new IllegalArgumentException("Invalid offset or length.");
+
+    int result = 0;
+
+    if(getUseSelectTimeout() && !__rtimeout.isZero())
+      result =
+        __select(__socket, true, __rtimeout.seconds, __rtimeout.microseconds);
+
+    if(result == 0)
+      result =
+        __recvfrom(__socket, data, offset, length, __family, address);
+
+    if(result < 0) {
+      if(__isErrorEAGAIN())
+        return TIMED_OUT;
+      __throwIOException();
+    }
+
+    return result;
+  }
+
+
   private native static int __sendto(int socket, byte[] data, int offset,
                                      int length, int family, byte[] address);
 
@@ -619,4 +776,125 @@ public class RawSocket {
     return write(address, data, 0, data.length);
   }
 
+
+  private static final int __EINTR = 4;
+  private static final int __EAGAIN = 11;
+  private static final int __MSG_WAITFORONE = 0x10000;
+
+  private static boolean __isBatchSupported() {
+    return Platform.isLinux();
+  }
+
+  /**
+   * Writes packets of an IPv4 batch with a single sendmmsg call on
+   * Linux, each to its own address and up to the limit of its buffer.
+   * Other platforms write the packets one by one.
+   *
+   * @param batch The packets to write.
+   * @param offset The index of the first packet to write.
+   * @param count The number of packets to write.
+   * @exception IllegalArgumentException If the offset or count are invalid.
+   * @exception IOException If an I/O error occurs.
+   * @exception InterruptedIOException If the write operation times out.
+   * @return The number of packets written, which may be less than count.
+   */
+  public int writeBatch(PacketBatch batch, int offset, int count)
+    throws IllegalArgumentException, IOException, InterruptedIOException
+  {
+    if(offset < 0 || count < 0 || count > batch.capacity() - offset)
+      throw new IllegalArgumentException("Invalid offset or count.");
+    if(count == 0)
+      return 0;
+
+    if(!__isBatchSupported()) {
+      byte[] address = new byte[4];
+      for(int i = offset; i < offset + count; i++) {
+        ByteBuffer packet = batch.packet(i);
+        byte[] data = new byte[packet.limit()];
+        packet.get(0, data);
+        int word = batch.getAddress(i);
+        for(int b = 0; b < 4; b++)
+          address[b] = (byte)(word >>> (24 - 8 * b));
+        write(InetAddress.getByAddress(address), data);
+      }
+      return count;
+    }
+
+    int result = 0;
+
+    if(getUseSelectTimeout() && !__stimeout.isZero())
+      result =
+        __select(__socket, false, __stimeout.seconds, __stimeout.microseconds);
+
+    if(result < 0) {
+      if(__isErrorEAGAIN())
+        __throwInterruptedIOException();
+      else
+        __throwIOException();
+    }
+
+    batch.prepareForWrite(offset, count);
+    try {
+      return __LibC.INSTANCE.sendmmsg(__socket, batch.header(offset), count, 0);
+    } catch(LastErrorException e) {
+      if(e.getErrorCode() == __EAGAIN || e.getErrorCode() == __EINTR)
+        throw new InterruptedIOException(e.getMessage());
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Reads as many IPv4 packets as are queued, up to the capacity of the
+   * batch, with a single recvmmsg call on Linux, waiting for the first
+   * one like {@link #tryRead}.  Each packet includes the IP header, its
+   * buffer limit is set to its length and its source address is
+   * available from {@link PacketBatch#getAddress}.  Other platforms
+   * read a single packet.
+   *
+   * @param batch The packets to read into.
+   * @exception IOException If an I/O error occurs.
+   * @return The number of packets read or {@link #TIMED_OUT}.
+   */
+  public int readBatch(PacketBatch batch) throws IOException {
+    if(!__isBatchSupported()) {
+      ByteBuffer packet = batch.packet(0);
+      byte[] address = new byte[4];
+      byte[] data = new byte[packet.capacity()];
+      int length = tryRead(address, data, 0, data.length);
+      if(length == TIMED_OUT)
+        return TIMED_OUT;
+      packet.clear();
+      packet.put(0, data, 0, length).limit(length);
+      batch.setAddress(0, (address[0] & 0xFF) << 24 | (address[1] & 0xFF) << 16 |
+                          (address[2] & 0xFF) << 8 | (address[3] & 0xFF));
+      return 1;
+    }
+
+    int result = 0;
+
+    if(getUseSelectTimeout() && !__rtimeout.isZero())
+      result =
+        __select(__socket, true, __rtimeout.seconds, __rtimeout.microseconds);
+
+    if(result < 0) {
+      if(__isErrorEAGAIN())
+        return TIMED_OUT;
+      __throwIOException();
+    }
+
+    batch.prepareForRead();
+    try {
+      // the socket timeout applies to the first packet only
+      result = __LibC.INSTANCE.recvmmsg(__socket, batch.header(0),
+                                        batch.capacity(), __MSG_WAITFORONE,
+                                        null);
+    } catch(LastErrorException e) {
+      if(e.getErrorCode() == __EAGAIN || e.getErrorCode() == __EINTR)
+        return TIMED_OUT;
+      throw new IOException(e.getMessage());
+    }
+    batch.received(result);
+    return result;
+  }
+
 }
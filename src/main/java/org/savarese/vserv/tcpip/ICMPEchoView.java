@@ -0,0 +1,84 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.vserv.tcpip;
+
+import static org.savarese.vserv.tcpip.ICMPPacket.*;
+
+/**
+ * Flyweight view of an ICMP echo request or reply, starting at the ICMP header,
+ * see {@link PacketView} and {@link ICMPEchoPacket}.
+ * The checksum covers everything up to the limit of the buffer.
+ */
+public class ICMPEchoView extends PacketView {
+	/** the length of the ICMP echo header, where the data starts */
+	public static final int HEADER_LENGTH = 8;
+
+	@Override
+	protected int _getChecksumOffset_() {
+		return OFFSET_ICMP_CHECKSUM;
+	}
+
+	public int getType() {
+		return _getByte_(OFFSET_TYPE);
+	}
+
+	public void setType(int type) {
+		_setByte_(OFFSET_TYPE, type);
+	}
+
+	public int getCode() {
+		return _getByte_(OFFSET_CODE);
+	}
+
+	public void setCode(int code) {
+		_setByte_(OFFSET_CODE, code);
+	}
+
+	public int getIdentifier() {
+		return _getWord_(OFFSET_IDENTIFIER);
+	}
+
+	public void setIdentifier(int id) {
+		_setWord_(OFFSET_IDENTIFIER, id);
+	}
+
+	public int getSequenceNumber() {
+		return _getWord_(OFFSET_SEQUENCE);
+	}
+
+	public void setSequenceNumber(int seq) {
+		_setWord_(OFFSET_SEQUENCE, seq);
+	}
+
+	/**
+	 * @param offset in the data after the header, must be even
+	 */
+	public long getDataLong(int offset) {
+		return _buffer_.getLong(_offset_ + HEADER_LENGTH + offset);
+	}
+
+	/**
+	 * @param offset in the data after the header, must be even
+	 */
+	public void setDataLong(int offset, long value) {
+		_setLong_(HEADER_LENGTH + offset, value);
+	}
+
+	/**
+	 * @return the number of bytes of the ICMP packet available in the buffer
+	 */
+	public int getICMPPacketByteLength() {
+		return _buffer_.limit() - _offset_;
+	}
+
+	/**
+	 * Computes the checksum of the whole ICMP packet from scratch.
+	 * @return the checksum
+	 */
+	public int computeICMPChecksum() {
+		return _computeChecksum_(getICMPPacketByteLength(), 0);
+	}
+}
@@ -53,6 +53,9 @@ public abstract class ICMPPacket extends IPPacket {
   /** The ICMP type number for an "host unreachable" message. */
   public static final int TYPE_HOST_UNREACHABLE = 3;
 
+  /** The ICMP type number for a "time exceeded" message. */
+  public static final int TYPE_TIME_EXCEEDED = 11;
+
   /** The byte offset into the IP packet where the ICMP packet begins. */
   int _offset;
 
@@ -0,0 +1,53 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.vserv.tcpip;
+
+import static org.savarese.vserv.tcpip.IPPacket.*;
+
+/**
+ * Flyweight view of an IPv4 header, see {@link PacketView} and {@link IPPacket}.
+ */
+public class IPView extends PacketView {
+
+	@Override
+	protected int _getChecksumOffset_() {
+		return OFFSET_IP_CHECKSUM;
+	}
+
+	public int getIPHeaderByteLength() {
+		return (_getByte_(0) & 0x0f) << 2;
+	}
+
+	public int getIPPacketLength() {
+		return _getWord_(OFFSET_TOTAL_LENGTH);
+	}
+
+	public int getTTL() {
+		return _getByte_(OFFSET_TTL);
+	}
+
+	public void setTTL(int ttl) {
+		_setByte_(OFFSET_TTL, ttl);
+	}
+
+	public int getProtocol() {
+		return _getByte_(OFFSET_PROTOCOL);
+	}
+
+	/**
+	 * @return the source address as a 32-bit word
+	 */
+	public int getSourceAsWord() {
+		return _getInt_(OFFSET_SOURCE_ADDRESS);
+	}
+
+	/**
+	 * @return the destination address as a 32-bit word
+	 */
+	public int getDestinationAsWord() {
+		return _getInt_(OFFSET_DESTINATION_ADDRESS);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.vserv.tcpip;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base of flyweight views of packet headers in a ByteBuffer, heap or direct.
+ * Unlike {@link IPPacket} and its subclasses, which own a byte array, a view is re-pointed at another packet
+ * with {@link #wrap} without allocating anything, so a single view can fill or parse a whole batch of packets.
+ * <p>
+ * Setters keep a valid checksum valid by updating it incrementally
+ * (<a href="https://www.rfc-editor.org/rfc/rfc1624">RFC 1624</a>),
+ * so changing a sequence number or a timestamp doesn't need another pass over the whole packet.
+ */
+public abstract class PacketView {
+	protected ByteBuffer _buffer_;
+	/** the index of the header in the buffer */
+	protected int _offset_;
+
+	/**
+	 * Points the view at a packet, the packet ends at the limit of the buffer.
+	 * @param offset the index of the header in the buffer
+	 */
+	public void wrap(ByteBuffer buffer, int offset) {
+		_buffer_ = buffer;
+		_offset_ = offset;
+	}
+
+	public final ByteBuffer getBuffer() {
+		return _buffer_;
+	}
+
+	public final int getOffset() {
+		return _offset_;
+	}
+
+	/**
+	 * @return offset of the checksum from the start of the header
+	 */
+	protected abstract int _getChecksumOffset_();
+
+	protected final int _getByte_(int offset) {
+		return _buffer_.get(_offset_ + offset) & 0xff;
+	}
+
+	protected final int _getWord_(int offset) {
+		return _buffer_.getShort(_offset_ + offset) & 0xffff;
+	}
+
+	protected final int _getInt_(int offset) {
+		return _buffer_.getInt(_offset_ + offset);
+	}
+
+	/**
+	 * Sets a 16-bit word and updates the checksum: HC' = ~(~HC + ~m + m').
+	 * @param offset must be even, the checksum is computed over words from the start of the header
+	 */
+	protected final void _setWord_(int offset, int word) {
+		int old = _getWord_(offset);
+		word &= 0xffff;
+		_buffer_.putShort(_offset_ + offset, (short) word);
+
+		int checksumIndex = _offset_ + _getChecksumOffset_();
+		int total = (~_buffer_.getShort(checksumIndex) & 0xffff) + (~old & 0xffff) + word;
+		total = (total & 0xffff) + (total >>> 16);
+		total = (total & 0xffff) + (total >>> 16);
+		_buffer_.putShort(checksumIndex, (short) ~total);
+	}
+
+	protected final void _setByte_(int offset, int value) {
+		int wordOffset = offset & ~1;
+		int word = _getWord_(wordOffset);
+		_setWord_(wordOffset, (offset & 1) == 0 ? (value & 0xff) << 8 | word & 0xff : word & 0xff00 | value & 0xff);
+	}
+
+	protected final void _setInt_(int offset, int value) {
+		_setWord_(offset, value >>> 16);
+		_setWord_(offset + 2, value);
+	}
+
+	protected final void _setLong_(int offset, long value) {
+		_setInt_(offset, (int) (value >>> 32));
+		_setInt_(offset + 4, (int) value);
+	}
+
+	/**
+	 * Computes the checksum from scratch and stores it, needed before the first incremental update.
+	 * @param length number of bytes covered, from the start of the header
+	 * @param virtualHeaderTotal sum of the pseudo header words, if any
+	 * @return the checksum
+	 */
+	protected final int _computeChecksum_(int length, int virtualHeaderTotal) {
+		int checksumOffset = _getChecksumOffset_();
+		int total = virtualHeaderTotal;
+		int i = 0;
+		for (; i + 1 < length; i += 2) {
+			if (i != checksumOffset) total += _getWord_(i);
+		}
+		if (i < length) total += _getByte_(i) << 8;
+
+		// fold to 16 bits
+		while ((total & 0xffff0000) != 0)
+			total = (total & 0xffff) + (total >>> 16);
+
+		total = ~total & 0xffff;
+		_buffer_.putShort(_offset_ + checksumOffset, (short) total);
+		return total;
+	}
+}
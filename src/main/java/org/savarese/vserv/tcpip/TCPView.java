@@ -0,0 +1,53 @@
+/*
+  This file is a part of Angry IP Scanner source code,
+  see http://www.angryip.org/ for more information.
+  Licensed under GPLv2.
+ */
+package org.savarese.vserv.tcpip;
+
+import static org.savarese.vserv.tcpip.TCPPacket.*;
+
+/**
+ * Flyweight view of a TCP header, see {@link PacketView} and {@link TCPPacket}.
+ * The initial checksum has to be computed with the pseudo header, e.g. by {@link TCPPacket#computeTCPChecksum},
+ * the setters then keep it valid.
+ */
+public class TCPView extends PacketView {
+
+	@Override
+	protected int _getChecksumOffset_() {
+		return OFFSET_TCP_CHECKSUM;
+	}
+
+	public int getSourcePort() {
+		return _getWord_(OFFSET_SOURCE_PORT);
+	}
+
+	public int getDestinationPort() {
+		return _getWord_(OFFSET_DESTINATION_PORT);
+	}
+
+	public void setDestinationPort(int port) {
+		_setWord_(OFFSET_DESTINATION_PORT, port);
+	}
+
+	public long getSequenceNumber() {
+		return _getInt_(OFFSET_SEQUENCE) & 0xffffffffL;
+	}
+
+	public void setSequenceNumber(long seq) {
+		_setInt_(OFFSET_SEQUENCE, (int) seq);
+	}
+
+	public long getAckNumber() {
+		return _getInt_(OFFSET_ACK) & 0xffffffffL;
+	}
+
+	/**
+	 * @param mask the control flags, e.g. {@link TCPPacket#MASK_SYN}
+	 * @return true if all the flags are set
+	 */
+	public boolean isSet(int mask) {
+		return (_getByte_(OFFSET_CONTROL) & mask) == mask;
+	}
+}